@@ -0,0 +1,96 @@
+package no.ecc.s100.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import no.ecc.s100.security.S100Crypt;
+import no.ecc.s100.security.S100CryptSession;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class S100CryptBenchmark {
+
+    private static final String KEY = "1C81DFAB4053D04803FFDC87EF92FDD1";
+
+    @Param({ "64", "4096", "1048576" })
+    public int size;
+
+    private S100Crypt crypt;
+    private S100CryptSession session;
+    private byte[] unencrypted;
+    private byte[] encrypted;
+    private byte[] out;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        crypt = new S100Crypt.RandomIV(KEY);
+        session = crypt.newSession();
+        unencrypted = new byte[size];
+        ThreadLocalRandom.current().nextBytes(unencrypted);
+        encrypted = crypt.encrypt(unencrypted);
+        out = new byte[session.encryptedLength(size)];
+        buffer = new byte[64 * 1024];
+    }
+
+    @Benchmark
+    public byte[] encryptBytes() throws GeneralSecurityException {
+        return crypt.encrypt(unencrypted);
+    }
+
+    @Benchmark
+    public byte[] decryptBytes() throws GeneralSecurityException {
+        return crypt.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public void encryptStream(Blackhole bh) throws GeneralSecurityException, IOException {
+        bh.consume(drain(crypt.encrypt(new ByteArrayInputStream(unencrypted))));
+    }
+
+    @Benchmark
+    public void decryptStream(Blackhole bh) throws GeneralSecurityException, IOException {
+        bh.consume(drain(crypt.decrypt(new ByteArrayInputStream(encrypted))));
+    }
+
+    @Benchmark
+    public int encryptSession() throws GeneralSecurityException {
+        return session.encrypt(unencrypted, 0, unencrypted.length, out, 0);
+    }
+
+    @Benchmark
+    public int decryptSession() throws GeneralSecurityException {
+        return session.decrypt(encrypted, 0, encrypted.length, out, 0);
+    }
+
+    private long drain(InputStream in) throws IOException {
+        long n = 0;
+        int r;
+        while ((r = in.read(buffer)) != -1) {
+            n += r;
+        }
+        return n;
+    }
+
+}
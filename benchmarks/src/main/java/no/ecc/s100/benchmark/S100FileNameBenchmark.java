@@ -0,0 +1,45 @@
+package no.ecc.s100.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.ecc.s100.S100FileName;
+import no.ecc.s100.S100ProductSpecification;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class S100FileNameBenchmark {
+
+    @Param({ "S101/DATASET_FILES/101NO00ABCDEF.000", "S102NO_ABCDEF.h5", "S-101" })
+    public String fileName;
+
+    @Benchmark
+    public String producerCode() {
+        return S100FileName.producerCode(fileName);
+    }
+
+    @Benchmark
+    public Integer standardNumber() {
+        return S100FileName.standardNumber(fileName);
+    }
+
+    @Benchmark
+    public S100ProductSpecification productSpecification() {
+        return S100ProductSpecification.createOrNull(fileName);
+    }
+
+}
@@ -0,0 +1,80 @@
+package no.ecc.s100.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.ecc.s100.S100ProductSpecification;
+import no.ecc.s100.security.S100DataPermit;
+import no.ecc.s100.security.S100Manufacturer;
+import no.ecc.s100.security.S100ManufacturerLookup;
+import no.ecc.s100.security.S100PermitFile;
+import no.ecc.s100.security.S100PermitFileReader;
+import no.ecc.s100.security.S100PermitFileWriter;
+import no.ecc.s100.security.S100UserPermit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class S100PermitFileBenchmark {
+
+    // example from S-100 Ed 4.0.0 15-7.3
+    private static final String M_ID = "859868";
+    private static final String M_KEY = "AD1DAD797C966EC9F6A55B66ED982815";
+    private static final String HW_ID = "3B2B8520ACFC3E96FB4F4537C0C0E426";
+
+    static final S100ManufacturerLookup MANUFACTURER_LOOKUP = mId -> new S100Manufacturer(M_ID, M_KEY);
+
+    @Param({ "10", "1000", "100000" })
+    public int permits;
+
+    private byte[] permitXml;
+
+    @Setup
+    public void setup() throws Exception {
+        S100ProductSpecification s101 = new S100ProductSpecification(101);
+        Date expiry = new Date();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        S100PermitFileWriter writer = new S100PermitFileWriter(out);
+        writer.writeHeader(new Date(), "ECC", S100UserPermitBenchmark.USER_PERMIT);
+        for (int i = 0; i < permits; i++) {
+            writer.write(S100DataPermit.create("101NO" + (10000000 + i) + ".000", 1, expiry,
+                    S100UserPermit.createRandomHwId(), HW_ID, s101));
+        }
+        writer.finish();
+        permitXml = out.toByteArray();
+    }
+
+    @Benchmark
+    public S100PermitFile parse() throws IOException, XMLStreamException {
+        return new S100PermitFile(MANUFACTURER_LOOKUP, new ByteArrayInputStream(permitXml));
+    }
+
+    @Benchmark
+    public long stream() throws IOException, XMLStreamException {
+        try (S100PermitFileReader reader = new S100PermitFileReader(new ByteArrayInputStream(permitXml))) {
+            return reader.stream().count();
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package no.ecc.s100.benchmark;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.ecc.s100.security.S100Signature;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class S100SignatureBenchmark {
+
+    @Param({ "1024", "1048576" })
+    public int size;
+
+    private KeyPair keyPair;
+    private byte[] data;
+    private String signature;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DSA");
+        keyPairGenerator.initialize(2048);
+        keyPair = keyPairGenerator.generateKeyPair();
+        data = new byte[size];
+        ThreadLocalRandom.current().nextBytes(data);
+        signature = sign().toString();
+    }
+
+    @Benchmark
+    public S100Signature sign() throws GeneralSecurityException {
+        S100Signature s = new S100Signature();
+        s.initSign(keyPair.getPrivate());
+        s.update(data);
+        s.sign();
+        return s;
+    }
+
+    @Benchmark
+    public boolean verify() throws GeneralSecurityException {
+        S100Signature s = new S100Signature(signature);
+        s.initVerify(keyPair.getPublic());
+        s.update(data);
+        return s.verify();
+    }
+
+}
@@ -0,0 +1,45 @@
+package no.ecc.s100.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.ecc.s100.security.S100UserPermit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class S100UserPermitBenchmark {
+
+    // example from S-100 Ed 4.0.0 15-7.3
+    static final String USER_PERMIT = "AD1DAD797C966EC9F6A55B66ED98281599B3C7B1859868";
+
+    private final S100UserPermit userPermit = new S100UserPermit(USER_PERMIT);
+
+    @Benchmark
+    public S100UserPermit parseAndValidate() {
+        return new S100UserPermit(USER_PERMIT);
+    }
+
+    @Benchmark
+    public String userPermitString() {
+        return userPermit.getUserPermitString();
+    }
+
+    @Benchmark
+    public String encryptedHwIdCRC() {
+        return userPermit.getEncryptedHwIdCRC();
+    }
+
+}
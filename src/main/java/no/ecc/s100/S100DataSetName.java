@@ -0,0 +1,244 @@
+package no.ecc.s100;
+
+/**
+ * A parsed S-100 data set file name like "101NO00ABCDEF.000" or
+ * "S102NO_ABCDEF.h5". Parsing is done in a single pass over a
+ * {@link CharSequence} without regular expressions, and follow the same rules
+ * as {@link S100FileName}.
+ */
+public final class S100DataSetName {
+
+    private static final int NO_STANDARD_NUMBER = -1;
+
+    private static final int OTHER = 0;
+    // like "101NO00ABCDEF.000". standard number and four character producer code
+    private static final int PATTERN_1 = 1;
+    // like "S102NOABCDEF.h5". S, standard number and two character producer code
+    private static final int PATTERN_2 = 2;
+
+    private final int standardNumber;
+    private final String producerCode;
+    private final String cellId;
+    private final String suffix;
+
+    private S100DataSetName(int standardNumber, String producerCode, String cellId, String suffix) {
+        this.standardNumber = standardNumber;
+        this.producerCode = producerCode;
+        this.cellId = cellId;
+        this.suffix = suffix;
+    }
+
+    /**
+     * Parse the given file name. Any directories in front of the file name are
+     * ignored.
+     *
+     * @return the parsed name, or null if the given name is null or too short to
+     *         be a S-100 data set file name.
+     */
+    public static S100DataSetName parse(CharSequence fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        int start = baseNameStart(fileName);
+        int end = fileName.length();
+        if (end - start < 5) {
+            return null;
+        }
+
+        int kind = kind(fileName, start, end);
+        int dot = suffixDot(fileName, start, end);
+        int nameEnd = dot == -1 ? end : dot;
+
+        int producerEnd = producerCodeEnd(kind, start);
+        int producerStrippedEnd = kind == PATTERN_1 ? stripZeros(fileName, start + 3, producerEnd) : producerEnd;
+
+        return new S100DataSetName(standardNumber(fileName, kind, start, nameEnd),
+                fileName.subSequence(producerStart(kind, start), producerStrippedEnd).toString(),
+                fileName.subSequence(Math.min(producerEnd, nameEnd), nameEnd).toString(),
+                dot == -1 ? null : fileName.subSequence(dot + 1, end).toString());
+    }
+
+    /**
+     * Like {@link S100FileName#standardNumber(String)}, but without creating
+     * any objects.
+     *
+     * @return the standard number or -1 if not found.
+     */
+    public static int standardNumber(CharSequence fileName) {
+        if (fileName == null) {
+            return NO_STANDARD_NUMBER;
+        }
+        int start = baseNameStart(fileName);
+        int end = fileName.length();
+        if (end - start < 5) {
+            return NO_STANDARD_NUMBER;
+        }
+        int kind = kind(fileName, start, end);
+        int dot = suffixDot(fileName, start, end);
+        return standardNumber(fileName, kind, start, dot == -1 ? end : dot);
+    }
+
+    /**
+     * Like {@link S100FileName#producerCode(String)}.
+     */
+    public static String producerCode(CharSequence fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        int start = baseNameStart(fileName);
+        int end = fileName.length();
+        if (end - start < 5) {
+            return null;
+        }
+        int kind = kind(fileName, start, end);
+        int producerEnd = producerCodeEnd(kind, start);
+        if (kind == PATTERN_1) {
+            producerEnd = stripZeros(fileName, start + 3, producerEnd);
+        }
+        return fileName.subSequence(producerStart(kind, start), producerEnd).toString();
+    }
+
+    /**
+     * @return the standard number like 101 or null if not found.
+     */
+    public Integer getStandardNumber() {
+        return standardNumber == NO_STANDARD_NUMBER ? null : Integer.valueOf(standardNumber);
+    }
+
+    /**
+     * @return the {@link S100ProductSpecification} or null if a valid standard
+     *         number was not found.
+     */
+    public S100ProductSpecification getProductSpecification() {
+        if (standardNumber < 100 || standardNumber > 999) {
+            return null;
+        }
+        return S100ProductSpecification.valueOf(standardNumber);
+    }
+
+    public String getProducerCode() {
+        return producerCode;
+    }
+
+    /**
+     * @return the part of the name after the producer code and before the
+     *         suffix.
+     */
+    public String getCellId() {
+        return cellId;
+    }
+
+    /**
+     * @return the suffix after the first "." like "000" or "h5", or null if
+     *         there is no suffix.
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    @Override
+    public String toString() {
+        return "S100DataSetName[standardNumber=" + getStandardNumber() + ", producerCode=" + producerCode
+                + ", cellId=" + cellId + ", suffix=" + suffix + "]";
+    }
+
+    /**
+     * Same as {@link no.ecc.s100.utility.FileUtils#getBaseName(String)}.
+     */
+    private static int baseNameStart(CharSequence s) {
+        int i = lastIndexOf(s, '/');
+        if (i == -1) {
+            i = lastIndexOf(s, '\\');
+        }
+        return i + 1;
+    }
+
+    private static int lastIndexOf(CharSequence s, char c) {
+        for (int i = s.length() - 1; i >= 0; i--) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first "." in the base name if it is not the
+     *         first character, or -1.
+     */
+    private static int suffixDot(CharSequence s, int start, int end) {
+        if (s.charAt(start) == '.') {
+            return -1;
+        }
+        for (int i = start + 1; i < end; i++) {
+            if (s.charAt(i) == '.') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int kind(CharSequence s, int start, int end) {
+        if (end - start >= 7 && S100Digits.isDigits(s, start, start + 3)
+                && isUpperAlphaNumeric(s, start + 3, start + 7)) {
+            return PATTERN_1;
+        }
+        if (end - start >= 6 && s.charAt(start) == 'S' && S100Digits.isDigits(s, start + 1, start + 4)
+                && isUpperAlphaNumeric(s, start + 4, start + 6)) {
+            return PATTERN_2;
+        }
+        return OTHER;
+    }
+
+    private static int standardNumber(CharSequence s, int kind, int start, int nameEnd) {
+        switch (kind) {
+        case PATTERN_1:
+            return S100Digits.parseDigits(s, start, start + 3);
+        case PATTERN_2:
+            return S100Digits.parseDigits(s, start + 1, start + 4);
+        default:
+            // earlier S-101 version in Caris test data. Sorry, this is not good.
+            return nameEnd - start == 10 ? 101 : NO_STANDARD_NUMBER;
+        }
+    }
+
+    private static int producerStart(int kind, int start) {
+        switch (kind) {
+        case PATTERN_1:
+            return start + 3;
+        case PATTERN_2:
+            return start + 4;
+        default:
+            return start;
+        }
+    }
+
+    private static int producerCodeEnd(int kind, int start) {
+        switch (kind) {
+        case PATTERN_1:
+            return start + 7;
+        case PATTERN_2:
+            return start + 6;
+        default:
+            return start + 2;
+        }
+    }
+
+    private static int stripZeros(CharSequence s, int from, int end) {
+        while (end > from && s.charAt(end - 1) == '0') {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isUpperAlphaNumeric(CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'A' || c > 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
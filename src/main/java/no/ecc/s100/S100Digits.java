@@ -0,0 +1,56 @@
+package no.ecc.s100;
+
+/**
+ * Allocation free checking and parsing of decimal digits in a
+ * {@link CharSequence}, shared by the name parsers in this package.
+ */
+final class S100Digits {
+
+    private S100Digits() {
+    }
+
+    /**
+     * @return true if all characters from (inclusive) to (exclusive) are ASCII
+     *         digits.
+     */
+    static boolean isDigits(CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the digits from (inclusive) to (exclusive). Check them with
+     * {@link #isDigits(CharSequence, int, int)} first, and there must be few
+     * enough to fit in an int.
+     */
+    static int parseDigits(CharSequence s, int from, int to) {
+        int r = 0;
+        for (int i = from; i < to; i++) {
+            r = r * 10 + (s.charAt(i) - '0');
+        }
+        return r;
+    }
+
+    /**
+     * Same as {@link #parseDigits(CharSequence, int, int)}, but stop as soon
+     * as the number is larger than max.
+     * 
+     * @return the number, or -1 if it is larger than max.
+     */
+    static int parseDigits(CharSequence s, int from, int to, int max) {
+        int r = 0;
+        for (int i = from; i < to; i++) {
+            r = r * 10 + (s.charAt(i) - '0');
+            if (r > max) {
+                return -1;
+            }
+        }
+        return r;
+    }
+
+}
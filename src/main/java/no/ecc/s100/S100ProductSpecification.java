@@ -5,10 +5,22 @@ package no.ecc.s100;
  */
 public class S100ProductSpecification implements Comparable<S100ProductSpecification> {
 
+    private static final int MIN_NUMBER = 100;
+    private static final int MAX_NUMBER = 999;
+
+    private static final S100ProductSpecification[] INSTANCES = new S100ProductSpecification[MAX_NUMBER
+            - MIN_NUMBER + 1];
+
+    static {
+        for (int nr = MIN_NUMBER; nr <= MAX_NUMBER; nr++) {
+            INSTANCES[nr - MIN_NUMBER] = new S100ProductSpecification(nr);
+        }
+    }
+
     private final int nr;
 
     public S100ProductSpecification(int nr) {
-        if (nr < 100 || nr > 999) {
+        if (nr < MIN_NUMBER || nr > MAX_NUMBER) {
             throw new IllegalArgumentException("Illegal S-100 product specification number: " + nr);
         }
         this.nr = nr;
@@ -17,7 +29,8 @@ public class S100ProductSpecification implements Comparable<S100ProductSpecifica
     /**
      * Construct a {@link S100ProductSpecification} based on a string that can
      * be like "101", "S101", "S-101", a S-100 data set id, a S-100 data set
-     * file name.
+     * file name. Prefer {@link #valueOf(CharSequence)} that does not create a
+     * new instance.
      * 
      * @param s
      * @throws IllegalArgumentException
@@ -25,40 +38,87 @@ public class S100ProductSpecification implements Comparable<S100ProductSpecifica
      *             {@link String} argument.
      */
     public S100ProductSpecification(String s) {
-        try {
-            if (s.matches("^[0-9]+$")) {
-                this.nr = Integer.parseInt(s);
-            } else if (s.length() == 4 && s.startsWith("S")) {
-                this.nr = Integer.parseInt(s.substring(1));
-            } else if (s.length() == 5 && s.startsWith("S-")) {
-                this.nr = Integer.parseInt(s.substring(2));
-            } else {
-                Integer snr = S100FileName.standardNumber(s);
-                if (snr == null) {
-                    String pattern = ".*S-([0-9]{3}).*";
-                    if (s.matches(pattern)) {
-                        snr = Integer.valueOf(s.replaceAll(pattern, "$1"));
-                    }
-                }
-                if (snr == null) {
-                    throw new IllegalArgumentException(
-                            "Could not extract S-100 product specification number from: " + s);
-                }
-                this.nr = snr.intValue();
-            }
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException(
-                    "Could not extract S-100 product specification number from: "
-                            + s);
+        this(valueOf(s).nr);
+    }
+
+    /**
+     * @return the shared {@link S100ProductSpecification} for the given number.
+     * @throws IllegalArgumentException
+     *             if the number is not a legal product specification number.
+     */
+    public static S100ProductSpecification valueOf(int nr) {
+        if (nr < MIN_NUMBER || nr > MAX_NUMBER) {
+            throw new IllegalArgumentException("Illegal S-100 product specification number: " + nr);
         }
+        return INSTANCES[nr - MIN_NUMBER];
     }
-    
+
+    /**
+     * Like {@link #S100ProductSpecification(String)}, but return a shared
+     * instance.
+     * 
+     * @throws IllegalArgumentException
+     *             if a product specification can not be found in the given
+     *             argument.
+     */
+    public static S100ProductSpecification valueOf(CharSequence s) {
+        S100ProductSpecification r = parseOrNull(s);
+        if (r == null) {
+            throw new IllegalArgumentException("Could not extract S-100 product specification number from: " + s);
+        }
+        return r;
+    }
+
+    /**
+     * Same as {@link #parseOrNull(CharSequence)}.
+     */
     public static S100ProductSpecification createOrNull(String s) {
-        try {
-            return new S100ProductSpecification(s);
-        } catch (RuntimeException e) {
+        return parseOrNull(s);
+    }
+
+    /**
+     * Like {@link #valueOf(CharSequence)}, but return null instead of throwing
+     * an exception if a product specification can not be found.
+     */
+    public static S100ProductSpecification parseOrNull(CharSequence s) {
+        if (s == null) {
+            return null;
+        }
+        int nr = number(s);
+        if (nr < MIN_NUMBER || nr > MAX_NUMBER) {
             return null;
         }
+        return INSTANCES[nr - MIN_NUMBER];
+    }
+
+    /**
+     * @return the product specification number in the given argument or -1.
+     */
+    private static int number(CharSequence s) {
+        int length = s.length();
+        if (length > 0 && S100Digits.isDigits(s, 0, length)) {
+            // "101"
+            return S100Digits.parseDigits(s, 0, length, MAX_NUMBER);
+        } else if (length == 4 && s.charAt(0) == 'S' && S100Digits.isDigits(s, 1, 4)) {
+            // "S101"
+            return S100Digits.parseDigits(s, 1, 4, MAX_NUMBER);
+        } else if (length == 5 && s.charAt(0) == 'S' && s.charAt(1) == '-' && S100Digits.isDigits(s, 2, 5)) {
+            // "S-101"
+            return S100Digits.parseDigits(s, 2, 5, MAX_NUMBER);
+        }
+
+        int nr = S100DataSetName.standardNumber(s);
+        if (nr != -1) {
+            return nr;
+        }
+
+        // the last "S-" followed by three digits
+        for (int i = length - 5; i >= 0; i--) {
+            if (s.charAt(i) == 'S' && s.charAt(i + 1) == '-' && S100Digits.isDigits(s, i + 2, i + 5)) {
+                return S100Digits.parseDigits(s, i + 2, i + 5, MAX_NUMBER);
+            }
+        }
+        return -1;
     }
 
     public int getNumber() {
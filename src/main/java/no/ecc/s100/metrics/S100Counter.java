@@ -0,0 +1,53 @@
+package no.ecc.s100.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter that can be incremented from many threads with low contention.
+ */
+public final class S100Counter {
+
+    private final String name;
+    private final LongAdder sum = new LongAdder();
+    private volatile long resetNanos = System.nanoTime();
+
+    S100Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void add(long n) {
+        sum.add(n);
+    }
+
+    public void increment() {
+        sum.increment();
+    }
+
+    public long get() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the average number per second since this counter was created or
+     *         last reset.
+     */
+    public double getRatePerSecond() {
+        long nanos = System.nanoTime() - resetNanos;
+        return nanos <= 0 ? 0 : get() * 1e9 / nanos;
+    }
+
+    public void reset() {
+        sum.reset();
+        resetNanos = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return name + "=" + get() + String.format(" (%.1f/s)", Double.valueOf(getRatePerSecond()));
+    }
+
+}
@@ -0,0 +1,23 @@
+package no.ecc.s100.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("no.ecc.s100.Crypt")
+@Label("S-100 Crypt")
+@Category({ "S-100", "Crypto" })
+@Description("Encryption or decryption of data using S100Crypt")
+public final class S100CryptEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+}
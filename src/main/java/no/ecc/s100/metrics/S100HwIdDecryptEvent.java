@@ -0,0 +1,20 @@
+package no.ecc.s100.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("no.ecc.s100.HwIdDecrypt")
+@Label("S-100 HW_ID Decrypt")
+@Category({ "S-100", "Permit" })
+@Description("Decryption of a HW_ID from a user permit")
+@StackTrace(false)
+public final class S100HwIdDecryptEvent extends Event {
+
+    @Label("Manufacturer Id")
+    String manufacturerId;
+
+}
@@ -0,0 +1,205 @@
+package no.ecc.s100.metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import jdk.jfr.EventType;
+
+/**
+ * A dependency free registry of counters and latency histograms for the hot
+ * paths of this library, and the hooks that feed them and the Java Flight
+ * Recorder events in this package.
+ * <p>
+ * The metrics are disabled by default and can be enabled by
+ * {@link #setEnabled(boolean)} or the system property
+ * {@value #ENABLED_PROPERTY}. The Flight Recorder events are recorded
+ * independently of this setting when enabled in a recording, like any other JFR
+ * event. When neither is enabled, the start hooks return null without creating
+ * any objects, and the end hooks ignore null.
+ */
+public final class S100Metrics {
+
+    public static final String ENABLED_PROPERTY = "no.ecc.s100.metrics";
+
+    public static final S100Counter BYTES_ENCRYPTED = new S100Counter("bytesEncrypted");
+    public static final S100Counter BYTES_DECRYPTED = new S100Counter("bytesDecrypted");
+    public static final S100Counter PERMIT_FILES_PARSED = new S100Counter("permitFilesParsed");
+    public static final S100Counter DATA_PERMITS_PARSED = new S100Counter("dataPermitsParsed");
+    public static final S100Counter HW_ID_DECRYPTS = new S100Counter("hwIdDecrypts");
+    public static final S100Counter SIGNATURES_VERIFIED = new S100Counter("signaturesVerified");
+    public static final S100Counter SIGNATURES_INVALID = new S100Counter("signaturesInvalid");
+
+    public static final S100Histogram PERMIT_FILE_PARSE_NANOS = new S100Histogram("permitFileParseNanos");
+    // from the first update after initVerify, so hashing of the data is included
+    public static final S100Histogram SIGNATURE_VERIFY_NANOS = new S100Histogram("signatureVerifyNanos");
+
+    private static final List<S100Counter> COUNTERS = Collections.unmodifiableList(Arrays.asList(BYTES_ENCRYPTED,
+            BYTES_DECRYPTED, PERMIT_FILES_PARSED, DATA_PERMITS_PARSED, HW_ID_DECRYPTS, SIGNATURES_VERIFIED,
+            SIGNATURES_INVALID));
+    private static final List<S100Histogram> HISTOGRAMS = Collections
+            .unmodifiableList(Arrays.asList(PERMIT_FILE_PARSE_NANOS, SIGNATURE_VERIFY_NANOS));
+
+    public static final String ENCRYPT = "encrypt";
+    public static final String DECRYPT = "decrypt";
+
+    private static final EventType CRYPT_EVENT = EventType.getEventType(S100CryptEvent.class);
+    private static final EventType PERMIT_FILE_EVENT = EventType.getEventType(S100PermitFileEvent.class);
+    private static final EventType HW_ID_DECRYPT_EVENT = EventType.getEventType(S100HwIdDecryptEvent.class);
+    private static final EventType SIGNATURE_EVENT = EventType.getEventType(S100SignatureEvent.class);
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private S100Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        S100Metrics.enabled = enabled;
+    }
+
+    public static List<S100Counter> getCounters() {
+        return COUNTERS;
+    }
+
+    public static List<S100Histogram> getHistograms() {
+        return HISTOGRAMS;
+    }
+
+    /**
+     * Reset all counters and histograms.
+     */
+    public static void reset() {
+        COUNTERS.forEach(S100Counter::reset);
+        HISTOGRAMS.forEach(S100Histogram::reset);
+    }
+
+    /**
+     * @return a human readable report of all counters and histograms.
+     */
+    public static String report() {
+        StringBuilder s = new StringBuilder();
+        for (S100Counter counter : COUNTERS) {
+            s.append(counter).append('\n');
+        }
+        for (S100Histogram histogram : HISTOGRAMS) {
+            s.append(histogram).append('\n');
+        }
+        return s.toString();
+    }
+
+    /**
+     * @param operation
+     *            {@link #ENCRYPT} or {@link #DECRYPT}
+     * @return null if neither metrics nor the Flight Recorder event is enabled.
+     */
+    public static S100CryptEvent cryptStart(String operation) {
+        if (!enabled && !CRYPT_EVENT.isEnabled()) {
+            return null;
+        }
+        S100CryptEvent event = new S100CryptEvent();
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param bytes
+     *            the number of unencrypted bytes.
+     */
+    public static void cryptEnd(S100CryptEvent event, long bytes) {
+        if (event == null) {
+            return;
+        }
+        if (enabled) {
+            (DECRYPT.equals(event.operation) ? BYTES_DECRYPTED : BYTES_ENCRYPTED).add(bytes);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return null if neither metrics nor the Flight Recorder event is enabled.
+     */
+    public static S100PermitFileEvent permitFileStart() {
+        if (!enabled && !PERMIT_FILE_EVENT.isEnabled()) {
+            return null;
+        }
+        S100PermitFileEvent event = new S100PermitFileEvent();
+        if (enabled) {
+            event.startNanos = System.nanoTime();
+        }
+        event.begin();
+        return event;
+    }
+
+    public static void permitFileEnd(S100PermitFileEvent event, int dataPermits) {
+        if (event == null) {
+            return;
+        }
+        if (enabled && event.startNanos != 0) {
+            PERMIT_FILE_PARSE_NANOS.record(System.nanoTime() - event.startNanos);
+            PERMIT_FILES_PARSED.increment();
+            DATA_PERMITS_PARSED.add(dataPermits);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.dataPermits = dataPermits;
+            event.commit();
+        }
+    }
+
+    /**
+     * Call after a HW_ID has been successfully decrypted.
+     */
+    public static void hwIdDecrypted(String manufacturerId) {
+        if (enabled) {
+            HW_ID_DECRYPTS.increment();
+        }
+        if (!HW_ID_DECRYPT_EVENT.isEnabled()) {
+            return;
+        }
+        S100HwIdDecryptEvent event = new S100HwIdDecryptEvent();
+        if (event.shouldCommit()) {
+            event.manufacturerId = manufacturerId;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return null if neither metrics nor the Flight Recorder event is enabled.
+     */
+    public static S100SignatureEvent signatureStart() {
+        if (!enabled && !SIGNATURE_EVENT.isEnabled()) {
+            return null;
+        }
+        S100SignatureEvent event = new S100SignatureEvent();
+        if (enabled) {
+            event.startNanos = System.nanoTime();
+        }
+        event.begin();
+        return event;
+    }
+
+    public static void signatureEnd(S100SignatureEvent event, boolean valid) {
+        if (event == null) {
+            return;
+        }
+        if (enabled && event.startNanos != 0) {
+            SIGNATURE_VERIFY_NANOS.record(System.nanoTime() - event.startNanos);
+            (valid ? SIGNATURES_VERIFIED : SIGNATURES_INVALID).increment();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.valid = valid;
+            event.commit();
+        }
+    }
+
+}
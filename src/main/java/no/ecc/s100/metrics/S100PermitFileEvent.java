@@ -0,0 +1,20 @@
+package no.ecc.s100.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("no.ecc.s100.PermitFile")
+@Label("S-100 Permit File Parse")
+@Category({ "S-100", "Permit" })
+@Description("Parsing of a PERMIT.XML")
+public final class S100PermitFileEvent extends Event {
+
+    @Label("Data Permits")
+    int dataPermits;
+
+    transient long startNanos;
+
+}
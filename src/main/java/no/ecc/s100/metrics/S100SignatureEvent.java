@@ -0,0 +1,20 @@
+package no.ecc.s100.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("no.ecc.s100.SignatureVerify")
+@Label("S-100 Signature Verify")
+@Category({ "S-100", "Crypto" })
+@Description("Verification of a S-100 signature")
+public final class S100SignatureEvent extends Event {
+
+    @Label("Valid")
+    boolean valid;
+
+    transient long startNanos;
+
+}
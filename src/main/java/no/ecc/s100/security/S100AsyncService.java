@@ -0,0 +1,247 @@
+package no.ecc.s100.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.PublicKey;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade for decryption, signature verification and permit file
+ * parsing. Blocking I/O, like reading an upload, runs on virtual threads, while
+ * the CPU bound AES and DSA work runs on a bounded pool of platform threads so
+ * that the CPU is neither starved nor oversubscribed.
+ * <p>
+ * At most maxInFlight operations run at the same time. When that many are
+ * running, starting another one blocks the caller until one has completed.
+ * This backpressure is meant for callers like request handlers running on
+ * their own (virtual) threads.
+ * <p>
+ * Do not start operations from a thread that the running operations depend
+ * on, like from a callback of another operation. Such a callback runs on one
+ * of the CPU threads of this service, and when no room is available, the
+ * operation fails with {@link RejectedExecutionException} instead of blocking
+ * the CPU thread, which could otherwise deadlock. Use an async callback with
+ * another executor to wait for room.
+ */
+public class S100AsyncService implements AutoCloseable {
+
+    private final ExecutorService ioExecutor;
+    private final ExecutorService cpuExecutor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    /**
+     * One CPU thread per available processor, and at most four operations per
+     * CPU thread in flight.
+     */
+    public S100AsyncService() {
+        this(Runtime.getRuntime().availableProcessors(), 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public S100AsyncService(int cpuThreads, int maxInFlight) {
+        if (cpuThreads < 1) {
+            throw new IllegalArgumentException("Illegal number of CPU threads: " + cpuThreads);
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Illegal max in flight: " + maxInFlight);
+        }
+        this.ioExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.cpuExecutor = Executors.newFixedThreadPool(cpuThreads, new CpuThreadFactory(this));
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Decrypt the encrypted file into the target file.
+     * 
+     * @return the number of decrypted bytes.
+     */
+    public CompletableFuture<Long> decryptFile(S100Crypt crypt, Path encrypted, Path target) {
+        return submit(() -> start(cpuExecutor, () -> Long.valueOf(crypt.decrypt(encrypted, target))));
+    }
+
+    /**
+     * Read an encrypted upload to a temporary file next to the target file on
+     * a virtual thread, and then decrypt it into the target file.
+     * 
+     * @return the number of decrypted bytes.
+     */
+    public CompletableFuture<Long> decryptUpload(S100Crypt crypt, InputStream encrypted, Path target) {
+        return submit(() -> start(ioExecutor, () -> {
+            Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(),
+                    ".encrypted");
+            try (InputStream in = encrypted) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            return tmp;
+        }).thenCompose(tmp -> start(cpuExecutor, () -> {
+            try {
+                return Long.valueOf(crypt.decrypt(tmp, target));
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        })));
+    }
+
+    /**
+     * Verify the {@value S100Signature#ALGORITHM} signature of the given file.
+     */
+    public CompletableFuture<Boolean> verifyFile(PublicKey publicKey, Path file, String signatureBase64) {
+        return submit(() -> start(cpuExecutor, () -> {
+            S100Signature signature = new S100Signature(signatureBase64);
+            signature.initVerify(publicKey);
+            signature.update(file);
+            return Boolean.valueOf(signature.verify());
+        }));
+    }
+
+    /**
+     * Read the permit file on a virtual thread and parse it on a CPU thread.
+     */
+    public CompletableFuture<S100PermitFile> parsePermitFile(S100ManufacturerLookup manufacturerLookup,
+            Path permitFile) {
+        return submit(() -> start(ioExecutor, () -> Files.readAllBytes(permitFile))
+                .thenCompose(bytes -> parse(manufacturerLookup, bytes)));
+    }
+
+    /**
+     * Read the permit file from the given stream on a virtual thread and parse
+     * it on a CPU thread. The stream is closed.
+     */
+    public CompletableFuture<S100PermitFile> parsePermitFile(S100ManufacturerLookup manufacturerLookup,
+            InputStream permitFile) {
+        return submit(() -> start(ioExecutor, () -> {
+            try (InputStream in = permitFile) {
+                return in.readAllBytes();
+            }
+        }).thenCompose(bytes -> parse(manufacturerLookup, bytes)));
+    }
+
+    private CompletableFuture<S100PermitFile> parse(S100ManufacturerLookup manufacturerLookup, byte[] bytes) {
+        return start(cpuExecutor, () -> new S100PermitFile(manufacturerLookup, new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * @return the number of operations currently running.
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Stop accepting new operations and wait for the running ones to
+     * complete.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        inFlight.acquire(maxInFlight);
+        try {
+            ioExecutor.shutdown();
+            cpuExecutor.shutdown();
+            ioExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            cpuExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } finally {
+            inFlight.release(maxInFlight);
+        }
+    }
+
+    /**
+     * Wait for room for one more operation, start it and release the room when
+     * it completes. The CPU threads of this service never wait.
+     */
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        if (isCpuThread()) {
+            if (!inFlight.tryAcquire()) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException(
+                        "No room for more than " + maxInFlight + " operations in flight on a CPU thread"));
+            }
+        } else {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<T> result;
+        try {
+            result = operation.start();
+        } catch (RuntimeException e) {
+            inFlight.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((r, e) -> inFlight.release());
+    }
+
+    private static <T> CompletableFuture<T> start(Executor executor, Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private interface Operation<T> {
+        CompletableFuture<T> start();
+    }
+
+    private boolean isCpuThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof CpuThread && ((CpuThread) thread).service == this;
+    }
+
+    private static final class CpuThread extends Thread {
+
+        private final S100AsyncService service;
+
+        CpuThread(Runnable r, String name, S100AsyncService service) {
+            super(r, name);
+            this.service = service;
+        }
+
+    }
+
+    private static final class CpuThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+        private final S100AsyncService service;
+
+        CpuThreadFactory(S100AsyncService service) {
+            this.service = service;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new CpuThread(r, "s100-cpu-" + count.incrementAndGet(), service);
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,264 @@
+package no.ecc.s100.security;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.crypto.Cipher;
+
+/**
+ * Encrypt many data set files using {@link S100Crypt.RandomIV} on a bounded
+ * pool of worker threads. Each worker reuse its own {@link Cipher} and
+ * {@link SecureRandom} for all the files it encrypts.
+ */
+public class S100BulkEncryptor {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int parallelism;
+
+    public S100BulkEncryptor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public S100BulkEncryptor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Encrypt all regular files below the given source directory into the same
+     * relative location below the target directory.
+     *
+     * @param dataKeyForFile
+     *            give the hex encoded data key for a source file, or null if the
+     *            file should not be encrypted.
+     * @return a {@link Result} for each encrypted file.
+     */
+    public List<Result> encryptDirectory(Path sourceDirectory, Path targetDirectory,
+            Function<Path, String> dataKeyForFile) throws IOException, InterruptedException {
+        List<Job> jobs = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(sourceDirectory)) {
+            files.filter(Files::isRegularFile).sorted().forEach(source -> {
+                String dataKey = dataKeyForFile.apply(source);
+                if (dataKey != null) {
+                    Path target = targetDirectory.resolve(sourceDirectory.relativize(source).toString());
+                    jobs.add(new Job(source, target, dataKey));
+                }
+            });
+        }
+        return encrypt(jobs);
+    }
+
+    /**
+     * Encrypt the given files. A failure for a single file does not stop the
+     * other files from being encrypted, but is reported in its {@link Result},
+     * and the partly written target file is deleted. A file that could not be
+     * encrypted at all, like when no worker could be created, also get a
+     * failed {@link Result}.
+     *
+     * @return a {@link Result} for each {@link Job} in the same order as the
+     *         given jobs.
+     */
+    public List<Result> encrypt(Collection<Job> jobs) throws InterruptedException {
+        if (jobs.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Job[] queue = jobs.toArray(new Job[jobs.size()]);
+        Result[] results = new Result[queue.length];
+        AtomicInteger next = new AtomicInteger();
+
+        int workerCount = Math.min(parallelism, queue.length);
+        List<Callable<Void>> workers = new ArrayList<>(workerCount);
+        List<Throwable> workerFailures = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(() -> {
+                Worker worker;
+                try {
+                    worker = new Worker();
+                } catch (RuntimeException e) {
+                    // leave the jobs to the other workers
+                    workerFailures.add(e);
+                    return null;
+                }
+                int jobIndex;
+                while ((jobIndex = next.getAndIncrement()) < queue.length) {
+                    results[jobIndex] = worker.encrypt(queue[jobIndex]);
+                }
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (Future<Void> f : executor.invokeAll(workers)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    workerFailures.add(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            // keep the results of the jobs that did run
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    IllegalStateException failure = new IllegalStateException("Not encrypted");
+                    workerFailures.forEach(failure::addSuppressed);
+                    results[i] = new Result(queue[i], 0, 0, failure);
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    private static final class Worker {
+
+        private final Cipher cipher;
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        Worker() {
+            try {
+                cipher = S100Crypt.RandomIV.newCipher();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Result encrypt(Job job) {
+            long start = System.nanoTime();
+            long bytes = 0;
+            boolean targetOpened = false;
+            try {
+                S100Crypt.RandomIV crypt = new S100Crypt.RandomIV(job.getDataKey());
+                Path parent = job.getTarget().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                try (InputStream in = Files.newInputStream(job.getSource());
+                        OutputStream target = Files.newOutputStream(job.getTarget())) {
+                    targetOpened = true;
+                    try (OutputStream out = crypt.encrypt(target, cipher, random)) {
+                        int n;
+                        while ((n = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, n);
+                            bytes += n;
+                        }
+                    }
+                }
+                return new Result(job, bytes, System.nanoTime() - start, null);
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                if (targetOpened) {
+                    try {
+                        Files.deleteIfExists(job.getTarget());
+                    } catch (IOException deleteFailure) {
+                        e.addSuppressed(deleteFailure);
+                    }
+                }
+                return new Result(job, bytes, System.nanoTime() - start, e);
+            }
+        }
+
+    }
+
+    public static final class Job {
+
+        private final Path source;
+        private final Path target;
+        private final String dataKey;
+
+        /**
+         * @param dataKey
+         *            the hex encoded data key to encrypt the source file with.
+         */
+        public Job(Path source, Path target, String dataKey) {
+            this.source = source;
+            this.target = target;
+            this.dataKey = dataKey;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public Path getTarget() {
+            return target;
+        }
+
+        public String getDataKey() {
+            return dataKey;
+        }
+
+    }
+
+    public static final class Result {
+
+        private final Job job;
+        private final long bytes;
+        private final long nanos;
+        private final Exception failure;
+
+        private Result(Job job, long bytes, long nanos, Exception failure) {
+            this.job = job;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        public boolean isSuccess() {
+            return failure == null;
+        }
+
+        /**
+         * @return the number of unencrypted bytes read from the source file.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public Exception getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return job.getSource() + (isSuccess() ? " OK " + bytes + " bytes" : " FAILED " + failure);
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+package no.ecc.s100.security;
+
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import no.ecc.s100.metrics.S100Metrics;
+import no.ecc.s100.utility.Hex;
+
+/**
+ * A {@link S100ManufacturerLookup} decorator that keep ready to use key
+ * material for each M_ID and a bounded cache from encrypted to decrypted
+ * HW_ID.
+ * <p>
+ * The {@link S100Manufacturer}s returned by this lookup use the cache in
+ * {@link S100Manufacturer#decrypt(String)}, so this can be given directly to
+ * {@link S100PermitFile}. This class is thread safe.
+ */
+public class S100CachingManufacturerLookup implements S100ManufacturerLookup {
+
+    private final S100ManufacturerLookup delegate;
+    private final ConcurrentMap<String, CachingManufacturer> manufacturerByMId = new ConcurrentHashMap<>();
+    private final Cache<String, String> hwIdByEncryptedHwId;
+
+    /**
+     * @param maximumHwIds
+     *            the maximum number of decrypted HW_IDs to keep. The least
+     *            recently used are evicted first.
+     * @param expireAfterAccess
+     *            how long a decrypted HW_ID is kept after it was last used.
+     */
+    public S100CachingManufacturerLookup(S100ManufacturerLookup delegate, long maximumHwIds,
+            Duration expireAfterAccess) {
+        this.delegate = delegate;
+        this.hwIdByEncryptedHwId = CacheBuilder.newBuilder().maximumSize(maximumHwIds)
+                .expireAfterAccess(expireAfterAccess.toNanos(), TimeUnit.NANOSECONDS).recordStats().build();
+    }
+
+    @Override
+    public S100Manufacturer manufacturerForMId(String mId) {
+        return manufacturerByMId.computeIfAbsent(mId, id -> {
+            S100Manufacturer m = delegate.manufacturerForMId(id);
+            return m == null ? null : new CachingManufacturer(m.getId(), m.getKey());
+        });
+    }
+
+    /**
+     * @return the decrypted HW_ID of the given {@link S100UserPermit}.
+     * @throws IllegalStateException
+     *             if the manufacturer is unknown.
+     */
+    public String decryptHwId(S100UserPermit userPermit) throws GeneralSecurityException {
+        S100Manufacturer m = manufacturerForMId(userPermit.getMId());
+        if (m == null) {
+            throw new IllegalStateException("Unknown manufacturer. M_ID=" + userPermit.getMId());
+        }
+        return m.decrypt(userPermit.getHwIdEncrypted());
+    }
+
+    /**
+     * @return hit, miss and eviction counts for the HW_ID cache.
+     */
+    public CacheStats getHwIdCacheStats() {
+        return hwIdByEncryptedHwId.stats();
+    }
+
+    public long getHwIdCacheSize() {
+        return hwIdByEncryptedHwId.size();
+    }
+
+    /**
+     * Forget all manufacturers and decrypted HW_IDs, for example after a
+     * manufacturer key has changed.
+     */
+    public void invalidateAll() {
+        manufacturerByMId.clear();
+        hwIdByEncryptedHwId.invalidateAll();
+    }
+
+    private final class CachingManufacturer extends S100Manufacturer {
+
+        private final S100Crypt crypt;
+        private final ThreadLocal<S100CryptSession> session;
+
+        CachingManufacturer(String id, String key) {
+            super(id, key);
+            this.crypt = new S100Crypt.EmptyIVNoPadding(key);
+            this.session = ThreadLocal.withInitial(() -> {
+                try {
+                    return crypt.newSession();
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        @Override
+        public String encrypt(String unencrypted) throws GeneralSecurityException {
+            return Hex.toString(crypt(session.get()::encrypt, Hex.fromString(unencrypted)));
+        }
+
+        @Override
+        public String decrypt(String encrypted) throws GeneralSecurityException {
+            try {
+                return hwIdByEncryptedHwId.get(getId() + ':' + encrypted, () -> {
+                    String decrypted = Hex.toString(crypt(session.get()::decrypt, Hex.fromString(encrypted)));
+                    S100Metrics.hwIdDecrypted(getId());
+                    return decrypted;
+                });
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof GeneralSecurityException) {
+                    throw (GeneralSecurityException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        private byte[] crypt(Operation operation, byte[] in) throws GeneralSecurityException {
+            byte[] out = new byte[in.length];
+            operation.apply(in, 0, in.length, out, 0);
+            return out;
+        }
+
+    }
+
+    private interface Operation {
+        int apply(byte[] in, int inOff, int len, byte[] out, int outOff) throws GeneralSecurityException;
+    }
+
+}
@@ -0,0 +1,60 @@
+package no.ecc.s100.security;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * Helpers for working directly with AES/CBC blocks. In CBC, decryption of a
+ * block only depend on the key and the previous cipher text block, so any
+ * range of whole blocks can be decrypted on its own using the previous cipher
+ * text block as IV.
+ */
+final class S100Cbc {
+
+    static final String TRANSFORMATION_NAME = "AES/CBC/NoPadding";
+    static final int BLOCK_SIZE = S100Crypt.AES_BLOCK_SIZE;
+
+    private static final byte[] ZERO_IV = new byte[S100Crypt.IV_LENGTH];
+
+    private S100Cbc() {
+    }
+
+    /**
+     * @return a new {@link Cipher} without padding.
+     */
+    static Cipher newCipher() throws GeneralSecurityException {
+        return S100CryptoProviders.newCipher(TRANSFORMATION_NAME);
+    }
+
+    /**
+     * Initialize the given cipher to decrypt starting at the block that follow
+     * the given IV block. A null IV means the first block of the cipher text,
+     * that for S-100 files is always encrypted using an all zero IV or an IV
+     * that does not matter.
+     */
+    static void initDecrypt(Cipher cipher, SecretKey key, byte[] iv) throws GeneralSecurityException {
+        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv == null ? ZERO_IV : iv));
+    }
+
+    /**
+     * @return the number of PKCS#7 padding bytes at the end of the given
+     *         decrypted block.
+     */
+    static int paddingLength(byte[] block, int off) throws BadPaddingException {
+        int p = block[off + BLOCK_SIZE - 1] & 0xFF;
+        if (p < 1 || p > BLOCK_SIZE) {
+            throw new BadPaddingException("Illegal padding");
+        }
+        for (int i = off + BLOCK_SIZE - p; i < off + BLOCK_SIZE; i++) {
+            if (block[i] != (byte) p) {
+                throw new BadPaddingException("Illegal padding");
+            }
+        }
+        return p;
+    }
+
+}
@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.PublicKey;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
@@ -12,13 +13,48 @@ import org.bouncycastle.openssl.jcajce.JcaMiscPEMGenerator;
 import org.bouncycastle.util.io.pem.PemObjectGenerator;
 import org.bouncycastle.util.io.pem.PemWriter;
 
+import no.ecc.s100.utility.Hex;
+
 public class S100Certificate {
 
+    private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORY = new ThreadLocal<>();
+
     private final X509Certificate certificate;
+    private final String fingerprint;
 
     public S100Certificate(byte[] encoded) throws GeneralSecurityException {
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        certificate = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(encoded));
+        certificate = (X509Certificate) certificateFactory().generateCertificate(new ByteArrayInputStream(encoded));
+        fingerprint = fingerprint(certificate.getEncoded());
+    }
+
+    public S100Certificate(X509Certificate certificate) {
+        this.certificate = certificate;
+        try {
+            fingerprint = fingerprint(certificate.getEncoded());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Can not encode certificate " + certificate.getSubjectX500Principal(),
+                    e);
+        }
+    }
+
+    private static CertificateFactory certificateFactory() throws GeneralSecurityException {
+        CertificateFactory cf = CERTIFICATE_FACTORY.get();
+        if (cf == null) {
+            cf = CertificateFactory.getInstance("X.509");
+            CERTIFICATE_FACTORY.set(cf);
+        }
+        return cf;
+    }
+
+    /**
+     * @return the hex encoded SHA-256 digest of the DER encoded certificate.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    static String fingerprint(byte[] encoded) throws GeneralSecurityException {
+        return Hex.toString(MessageDigest.getInstance("SHA-256").digest(encoded));
     }
 
     public S100PublicKey getS100PublicKey() {
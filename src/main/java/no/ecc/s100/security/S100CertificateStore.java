@@ -0,0 +1,209 @@
+package no.ecc.s100.security;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * A thread safe store of parsed {@link S100Certificate}s, like the IHO S-100
+ * root and the data server certificates, to avoid parsing the same
+ * certificates and verifying the same certificate chains again and again.
+ * <p>
+ * Certificates are kept by SHA-256 fingerprint and by subject. Only
+ * certificates added by {@link #addTrustAnchor(S100Certificate)} are accepted
+ * as issuers. Successful signature checks are remembered, while the validity
+ * period is checked on every verification, and each thread keep one
+ * {@link Signature} instance for each public key so that provider lookup is
+ * not done for each signature.
+ */
+public class S100CertificateStore {
+
+    // index of keyCertSign in X509Certificate.getKeyUsage()
+    private static final int KEY_CERT_SIGN = 5;
+
+    private final ConcurrentMap<String, S100Certificate> certificateByFingerprint = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, S100Certificate> certificateByInputDigest = new ConcurrentHashMap<>();
+    private final ConcurrentMap<X500Principal, S100Certificate> certificateBySubject = new ConcurrentHashMap<>();
+    private final Set<String> trustAnchorFingerprints = ConcurrentHashMap.newKeySet();
+    // certificate and issuer fingerprint of successful signature verifications
+    private final Set<String> verifiedFingerprints = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Map<PublicKey, Signature>> verifiers = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * @return the {@link S100Certificate} for the given DER or PEM encoded
+     *         certificate. The same bytes are only parsed the first time.
+     */
+    public S100Certificate get(byte[] encoded) throws GeneralSecurityException {
+        String inputDigest = S100Certificate.fingerprint(encoded);
+        S100Certificate certificate = certificateByInputDigest.get(inputDigest);
+        if (certificate == null) {
+            certificate = add(new S100Certificate(encoded));
+            certificateByInputDigest.put(inputDigest, certificate);
+        }
+        return certificate;
+    }
+
+    public S100Certificate add(S100Certificate certificate) {
+        return add(certificate.getFingerprint(), certificate);
+    }
+
+    private S100Certificate add(String fingerprint, S100Certificate certificate) {
+        S100Certificate existing = certificateByFingerprint.putIfAbsent(fingerprint, certificate);
+        if (existing != null) {
+            return existing;
+        }
+        certificateBySubject.put(certificate.getCertificate().getSubjectX500Principal(), certificate);
+        return certificate;
+    }
+
+    public S100Certificate getByFingerprint(String fingerprint) {
+        return certificateByFingerprint.get(fingerprint);
+    }
+
+    public S100Certificate getBySubject(X500Principal subject) {
+        return certificateBySubject.get(subject);
+    }
+
+    /**
+     * Trust the given certificate, like the IHO S-100 root certificate, as an
+     * issuer of other certificates. It must be a CA certificate. Only trust
+     * anchors are accepted as issuers by the verify methods.
+     */
+    public S100Certificate addTrustAnchor(S100Certificate certificate) throws GeneralSecurityException {
+        if (certificate.getCertificate().getBasicConstraints() < 0) {
+            throw new CertificateException("Not a CA certificate: "
+                    + certificate.getCertificate().getSubjectX500Principal());
+        }
+        S100Certificate added = add(certificate);
+        trustAnchorFingerprints.add(added.getFingerprint());
+        return added;
+    }
+
+    /**
+     * Stop trusting the given certificate as an issuer, like when it has been
+     * replaced. Remembered verifications using it are no longer used.
+     */
+    public void removeTrustAnchor(S100Certificate certificate) {
+        trustAnchorFingerprints.remove(certificate.getFingerprint());
+    }
+
+    public boolean isTrustAnchor(S100Certificate certificate) {
+        return trustAnchorFingerprints.contains(certificate.getFingerprint());
+    }
+
+    /**
+     * Verify that the given certificate is signed by the given issuer, like a
+     * data server certificate signed by the IHO S-100 root certificate. The
+     * issuer must be a trust anchor, and both certificates must be valid now.
+     * The signature check is only done the first time, but the validity of both
+     * certificates is checked every time.
+     * 
+     * @throws GeneralSecurityException
+     *             if the verification failed.
+     */
+    public void verify(S100Certificate certificate, S100Certificate issuer) throws GeneralSecurityException {
+        verify(certificate, issuer, System.currentTimeMillis());
+    }
+
+    void verify(S100Certificate certificate, S100Certificate issuer, long now) throws GeneralSecurityException {
+        if (!isTrustAnchor(issuer)) {
+            throw new CertificateException("Issuer is not a trust anchor: "
+                    + issuer.getCertificate().getSubjectX500Principal());
+        }
+        X509Certificate x509 = certificate.getCertificate();
+        X509Certificate issuerX509 = issuer.getCertificate();
+        Date date = new Date(now);
+        x509.checkValidity(date);
+        issuerX509.checkValidity(date);
+
+        String key = certificate.getFingerprint() + ':' + issuer.getFingerprint();
+        if (verifiedFingerprints.contains(key)) {
+            return;
+        }
+        if (issuerX509.getBasicConstraints() < 0) {
+            throw new CertificateException("Issuer is not a CA certificate: " + issuerX509.getSubjectX500Principal());
+        }
+        boolean[] keyUsage = issuerX509.getKeyUsage();
+        if (keyUsage != null && (keyUsage.length <= KEY_CERT_SIGN || !keyUsage[KEY_CERT_SIGN])) {
+            throw new CertificateException("Issuer may not sign certificates: " + issuerX509.getSubjectX500Principal());
+        }
+        x509.verify(issuer.getPublicKey());
+        verifiedFingerprints.add(key);
+    }
+
+    /**
+     * Verify that the given certificate is signed by one of the trust anchors
+     * in this store. The trust anchor with the issuer name as subject is tried
+     * first.
+     * 
+     * @throws GeneralSecurityException
+     *             if no trusted issuer is found in this store.
+     */
+    public void verify(S100Certificate certificate) throws GeneralSecurityException {
+        verify(certificate, System.currentTimeMillis());
+    }
+
+    void verify(S100Certificate certificate, long now) throws GeneralSecurityException {
+        X500Principal issuerName = certificate.getCertificate().getIssuerX500Principal();
+        S100Certificate issuer = getBySubject(issuerName);
+        if (issuer != null && isTrustAnchor(issuer)) {
+            verify(certificate, issuer, now);
+            return;
+        }
+
+        // the issuer name might not be equal to the subject of the issuer
+        // certificate. like the reversed order in the PRIMAR test certificate.
+        GeneralSecurityException failure = null;
+        for (String fingerprint : trustAnchorFingerprints) {
+            S100Certificate candidate = certificateByFingerprint.get(fingerprint);
+            if (candidate == null || candidate == certificate) {
+                continue;
+            }
+            try {
+                verify(certificate, candidate, now);
+                return;
+            } catch (GeneralSecurityException e) {
+                failure = e;
+            }
+        }
+        GeneralSecurityException e = new GeneralSecurityException("No trusted issuer found for " + issuerName);
+        if (failure != null) {
+            e.addSuppressed(failure);
+        }
+        throw e;
+    }
+
+    /**
+     * @return a {@link S100Signature} initialized for verification with the
+     *         given public key. It reuse a {@link Signature} instance kept for
+     *         the current thread, so it must only be used by the current thread
+     *         and be finished before the next call to this method for the same
+     *         key on the same thread.
+     */
+    public S100Signature verifier(PublicKey publicKey, String signatureBase64) throws GeneralSecurityException {
+        Map<PublicKey, Signature> signatureByKey = verifiers.get();
+        Signature signature = signatureByKey.get(publicKey);
+        if (signature == null) {
+            signature = S100CryptoProviders.newSignature();
+            signatureByKey.put(publicKey, signature);
+        }
+        // initVerify also reset any unfinished verification
+        signature.initVerify(publicKey);
+        return new S100Signature(signature, signatureBase64);
+    }
+
+    public int size() {
+        return certificateByFingerprint.size();
+    }
+
+}
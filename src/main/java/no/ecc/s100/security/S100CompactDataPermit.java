@@ -0,0 +1,165 @@
+package no.ecc.s100.security;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+import no.ecc.s100.S100ProductSpecification;
+import no.ecc.s100.utility.Hex;
+
+/**
+ * A compact, immutable alternative to {@link S100DataPermit} for keeping
+ * millions of permits in memory. The edition and expiry are stored as ints,
+ * the 16 byte encrypted data key as two longs and the product specification
+ * as its number. Objects like {@link Date} and the hex encoded key are only
+ * created when asked for.
+ * <p>
+ * For even less overhead, store many permits in a {@link S100DataPermitTable}.
+ */
+public final class S100CompactDataPermit implements Comparable<S100CompactDataPermit> {
+
+    /**
+     * The epoch day used for permits without an expiry date.
+     */
+    static final int NO_EXPIRY = Integer.MIN_VALUE;
+
+    private final String fileName;
+    private final int edtn;
+    private final int permitEndEpochDay;
+    private final long encryptedDataKeyHigh;
+    private final long encryptedDataKeyLow;
+    private final short productSpecificationNumber;
+
+    S100CompactDataPermit(String fileName, int edtn, int permitEndEpochDay, long encryptedDataKeyHigh,
+            long encryptedDataKeyLow, int productSpecificationNumber) {
+        this.fileName = fileName;
+        this.edtn = edtn;
+        this.permitEndEpochDay = permitEndEpochDay;
+        this.encryptedDataKeyHigh = encryptedDataKeyHigh;
+        this.encryptedDataKeyLow = encryptedDataKeyLow;
+        this.productSpecificationNumber = (short) productSpecificationNumber;
+    }
+
+    public static S100CompactDataPermit valueOf(S100DataPermit dataPermit) {
+        ByteBuffer key = encryptedKey(dataPermit);
+        return new S100CompactDataPermit(dataPermit.getFileName(), dataPermit.getEdtn(), epochDay(dataPermit),
+                key.getLong(0), key.getLong(8), dataPermit.getProductSpecification().getNumber());
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int getEdtn() {
+        return edtn;
+    }
+
+    /**
+     * @return the expiry as epoch day, or {@link Integer#MIN_VALUE} if none.
+     */
+    public int getPermitEndEpochDay() {
+        return permitEndEpochDay;
+    }
+
+    public LocalDate getPermitEndLocalDate() {
+        return localDate(permitEndEpochDay);
+    }
+
+    public Date getPermitEndDate() {
+        return date(permitEndEpochDay);
+    }
+
+    public String getEncryptedDataKey() {
+        return hex(encryptedDataKeyHigh, encryptedDataKeyLow);
+    }
+
+    long getEncryptedDataKeyHigh() {
+        return encryptedDataKeyHigh;
+    }
+
+    long getEncryptedDataKeyLow() {
+        return encryptedDataKeyLow;
+    }
+
+    int getProductSpecificationNumber() {
+        return productSpecificationNumber;
+    }
+
+    public S100ProductSpecification getProductSpecification() {
+        return S100ProductSpecification.valueOf(productSpecificationNumber);
+    }
+
+    /**
+     * @return the hex encoded data key decrypted using the given HW_ID.
+     */
+    public String decryptDataKey(String hwId) throws GeneralSecurityException {
+        return toDataPermit().decryptDataKey(hwId);
+    }
+
+    public S100DataPermit toDataPermit() {
+        return new S100DataPermit(fileName, edtn, getPermitEndDate(), getEncryptedDataKey(),
+                getProductSpecification());
+    }
+
+    @Override
+    public int compareTo(S100CompactDataPermit o) {
+        return fileName.compareTo(o.fileName);
+    }
+
+    @Override
+    public int hashCode() {
+        return fileName.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof S100CompactDataPermit)) {
+            return false;
+        }
+        return fileName.equals(((S100CompactDataPermit) obj).fileName);
+    }
+
+    @Override
+    public String toString() {
+        return fileName + " " + edtn + " " + getPermitEndLocalDate();
+    }
+
+    static int epochDay(S100DataPermit dataPermit) {
+        LocalDate expiry = dataPermit.getPermitEndLocalDate();
+        return expiry == null ? NO_EXPIRY : Math.toIntExact(expiry.toEpochDay());
+    }
+
+    static LocalDate localDate(int epochDay) {
+        return epochDay == NO_EXPIRY ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * @return the start of the given day in the default time zone, which is
+     *         how {@link S100DataPermit} parse the expiry date.
+     */
+    static Date date(int epochDay) {
+        LocalDate localDate = localDate(epochDay);
+        return localDate == null ? null : Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * @return the 16 byte encrypted data key of the given permit.
+     */
+    static ByteBuffer encryptedKey(S100DataPermit dataPermit) {
+        byte[] key = Hex.fromString(dataPermit.getEncryptedDataKey());
+        if (key.length != S100Crypt.KEY_SIZE_ENCODED / 2) {
+            throw new IllegalArgumentException("Illegal encrypted key length for " + dataPermit.getFileName());
+        }
+        return ByteBuffer.wrap(key);
+    }
+
+    static String hex(long high, long low) {
+        return Hex.toString(ByteBuffer.allocate(16).putLong(high).putLong(low).array());
+    }
+
+}
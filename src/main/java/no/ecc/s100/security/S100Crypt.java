@@ -5,7 +5,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
 
@@ -19,6 +29,8 @@ import javax.crypto.spec.SecretKeySpec;
 
 import com.google.common.io.ByteStreams;
 
+import no.ecc.s100.metrics.S100CryptEvent;
+import no.ecc.s100.metrics.S100Metrics;
 import no.ecc.s100.utility.Hex;
 
 public abstract class S100Crypt {
@@ -27,8 +39,12 @@ public abstract class S100Crypt {
 
     private static final int KEY_SIZE = 128;
     public static final int KEY_SIZE_ENCODED = KEY_SIZE / 4;
-    private static final int IV_LENGTH = 16;
-    private static final int AES_BLOCK_SIZE = 16;
+    static final int IV_LENGTH = 16;
+    static final int AES_BLOCK_SIZE = 16;
+
+    private static final int CHANNEL_BUFFER_SIZE = 1024 * 1024;
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+    private static final byte[] NO_PREFIX = new byte[0];
 
     protected final SecretKey key;
 
@@ -80,6 +96,249 @@ public abstract class S100Crypt {
     public abstract InputStream decrypt(InputStream in)
             throws GeneralSecurityException, IOException;
 
+    /**
+     * Create a reusable {@link S100CryptSession} for this key. A session is not
+     * thread safe.
+     */
+    public S100CryptSession newSession() throws GeneralSecurityException {
+        return new S100CryptSession.Generic(this);
+    }
+
+    /**
+     * Encrypt everything from the given {@link ReadableByteChannel} into the
+     * given {@link WritableByteChannel} using large direct buffers. None of the
+     * channels are closed.
+     * 
+     * @return the number of encrypted bytes written.
+     */
+    public long encrypt(ReadableByteChannel in, WritableByteChannel out)
+            throws GeneralSecurityException, IOException {
+        Pump pump = new Pump(initCipher(Cipher.ENCRYPT_MODE), 0, out);
+        pump.update(ByteBuffer.wrap(encryptPrefix()));
+        return pump.transfer(in, S100Metrics.ENCRYPT);
+    }
+
+    /**
+     * Decrypt everything from the given {@link ReadableByteChannel} into the
+     * given {@link WritableByteChannel} using large direct buffers. None of the
+     * channels are closed.
+     * 
+     * @return the number of decrypted bytes written.
+     */
+    public long decrypt(ReadableByteChannel in, WritableByteChannel out)
+            throws GeneralSecurityException, IOException {
+        return new Pump(initCipher(Cipher.DECRYPT_MODE), decryptSkip(), out).transfer(in, S100Metrics.DECRYPT);
+    }
+
+    /**
+     * Encrypt the file in into the file out. The input file is memory mapped.
+     * If the encryption fails, the partly written file out is deleted.
+     * 
+     * @return the number of encrypted bytes written.
+     */
+    public long encrypt(Path in, Path out) throws GeneralSecurityException, IOException {
+        boolean outOpened = false;
+        try (FileChannel inChannel = FileChannel.open(in, StandardOpenOption.READ);
+                FileChannel outChannel = openForWrite(out)) {
+            outOpened = true;
+            Pump pump = new Pump(initCipher(Cipher.ENCRYPT_MODE), 0, outChannel);
+            pump.update(ByteBuffer.wrap(encryptPrefix()));
+            return pump.transfer(inChannel, S100Metrics.ENCRYPT);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            if (outOpened) {
+                deleteAfterFailure(out, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Decrypt the file in into the file out. The input file is memory mapped.
+     * If the decryption fails, the partly written file out is deleted.
+     * 
+     * @return the number of decrypted bytes written.
+     */
+    public long decrypt(Path in, Path out) throws GeneralSecurityException, IOException {
+        return decrypt(in, out, null);
+    }
+
+    /**
+     * Like {@link #decrypt(Path, Path)}, but also update the given signature
+     * with the encrypted data, so that it is only read once.
+     */
+    long decrypt(Path in, Path out, S100Signature signature) throws GeneralSecurityException, IOException {
+        boolean outOpened = false;
+        try (FileChannel inChannel = FileChannel.open(in, StandardOpenOption.READ);
+                FileChannel outChannel = openForWrite(out)) {
+            outOpened = true;
+            Pump pump = new Pump(initCipher(Cipher.DECRYPT_MODE), decryptSkip(), outChannel);
+            pump.signature = signature;
+            return pump.transfer(inChannel, S100Metrics.DECRYPT);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            if (outOpened) {
+                deleteAfterFailure(out, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Decrypt the given encrypted channel on demand with random access. The
+     * returned channel is read only and close the given channel when closed.
+     */
+    public SeekableByteChannel decrypt(SeekableByteChannel in) throws GeneralSecurityException, IOException {
+        return new S100DecryptingChannel(this, in);
+    }
+
+    /**
+     * Open the given encrypted file for random access reading of the decrypted
+     * data.
+     */
+    public SeekableByteChannel openDecrypted(Path in) throws GeneralSecurityException, IOException {
+        FileChannel channel = FileChannel.open(in, StandardOpenOption.READ);
+        try {
+            return decrypt(channel);
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static FileChannel openForWrite(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    private static void deleteAfterFailure(Path path, Exception failure) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * @return a new {@link Cipher} initialized for the given mode. Used by the
+     *         channel, {@link Path} and session methods.
+     */
+    Cipher initCipher(int mode) throws GeneralSecurityException {
+        throw new NoSuchAlgorithmException("No cipher for " + getClass().getName());
+    }
+
+    /**
+     * @return the plain text to encrypt before the actual data.
+     */
+    byte[] encryptPrefix() {
+        return NO_PREFIX;
+    }
+
+    /**
+     * @return the number of decrypted bytes to discard before the actual data.
+     */
+    int decryptSkip() {
+        return 0;
+    }
+
+    /**
+     * @return true if the encrypted data end with PKCS#7 padding.
+     */
+    boolean isPadded() {
+        return false;
+    }
+
+    /**
+     * Push data through a {@link Cipher} into a {@link WritableByteChannel} in
+     * blocks of {@link #CHANNEL_BUFFER_SIZE}.
+     */
+    private static final class Pump {
+
+        private final Cipher cipher;
+        private final WritableByteChannel out;
+        private final ByteBuffer dst = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE + 2 * AES_BLOCK_SIZE);
+        private int skip;
+        // updated with all input if not null
+        private S100Signature signature;
+        // bytes read from the input channel, not counting any prefix
+        private long read;
+        private long written;
+
+        Pump(Cipher cipher, int skip, WritableByteChannel out) {
+            this.cipher = cipher;
+            this.skip = skip;
+            this.out = out;
+        }
+
+        /**
+         * @param operation
+         *            {@link S100Metrics#ENCRYPT} or {@link S100Metrics#DECRYPT}
+         */
+        long transfer(ReadableByteChannel in, String operation) throws GeneralSecurityException, IOException {
+            S100CryptEvent event = S100Metrics.cryptStart(operation);
+            try {
+                return transfer(in);
+            } finally {
+                // count the unencrypted bytes
+                S100Metrics.cryptEnd(event, S100Metrics.DECRYPT.equals(operation) ? written : read);
+            }
+        }
+
+        private long transfer(ReadableByteChannel in) throws GeneralSecurityException, IOException {
+            if (in instanceof FileChannel) {
+                FileChannel fileChannel = (FileChannel) in;
+                long size = fileChannel.size();
+                for (long position = fileChannel.position(); position < size; position += MAP_SIZE) {
+                    MappedByteBuffer mapped = fileChannel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(MAP_SIZE, size - position));
+                    read += mapped.remaining();
+                    update(mapped);
+                }
+                fileChannel.position(size);
+            } else {
+                ByteBuffer src = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+                while (in.read(src) != -1) {
+                    src.flip();
+                    read += src.remaining();
+                    update(src);
+                    src.clear();
+                }
+            }
+            return doFinal();
+        }
+
+        void update(ByteBuffer src) throws GeneralSecurityException, IOException {
+            if (signature != null) {
+                signature.update(src.duplicate());
+            }
+            int limit = src.limit();
+            while (src.hasRemaining()) {
+                src.limit(src.position() + Math.min(src.remaining(), CHANNEL_BUFFER_SIZE));
+                cipher.update(src, dst);
+                src.limit(limit);
+                drain();
+            }
+        }
+
+        long doFinal() throws GeneralSecurityException, IOException {
+            cipher.doFinal(ByteBuffer.allocate(0), dst);
+            drain();
+            return written;
+        }
+
+        private void drain() throws IOException {
+            dst.flip();
+            if (skip > 0) {
+                int n = Math.min(skip, dst.remaining());
+                dst.position(dst.position() + n);
+                skip -= n;
+            }
+            while (dst.hasRemaining()) {
+                written += out.write(dst);
+            }
+            dst.clear();
+        }
+
+    }
+
     public static final class RandomIV extends S100Crypt {
         
         // standard states PKCS#7, but that does not exist in java. using PKCS#5 instead.
@@ -114,9 +373,9 @@ public abstract class S100Crypt {
             new SecureRandom().nextBytes(randomBlock);
 
             SequenceInputStream inWithExtraBlockFirst = new SequenceInputStream(
-                    new ByteArrayInputStream(randomBlock), in);
+                    new ByteArrayInputStream(randomBlock), S100MeteredStreams.input(in, S100Metrics.ENCRYPT));
 
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION_NAME);
+            Cipher cipher = S100CryptoProviders.newCipher(TRANSFORMATION_NAME);
             cipher.init(Cipher.ENCRYPT_MODE, key, createRandomIV());
 
             return new CipherInputStream(inWithExtraBlockFirst, cipher);
@@ -124,6 +383,16 @@ public abstract class S100Crypt {
         
         @Override
         public OutputStream encrypt(OutputStream out) throws GeneralSecurityException, IOException {
+            return encrypt(out, newCipher(), new SecureRandom());
+        }
+
+        /**
+         * Like {@link #encrypt(OutputStream)}, but using the given {@link Cipher}
+         * and {@link SecureRandom} so that they can be reused for many encryptions.
+         * The {@link Cipher} must be created by {@link #newCipher()}.
+         */
+        OutputStream encrypt(OutputStream out, Cipher cipher, SecureRandom random)
+                throws GeneralSecurityException, IOException {
             // "On encryption of data files the plain text will be prepended by
             // a single
             // random block. Then encryption is done as normal using a random
@@ -133,22 +402,25 @@ public abstract class S100Crypt {
             // Data Client. "
 
             byte[] randomBlock = new byte[AES_BLOCK_SIZE];
-            new SecureRandom().nextBytes(randomBlock);
+            random.nextBytes(randomBlock);
 
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION_NAME);
-            cipher.init(Cipher.ENCRYPT_MODE, key, createRandomIV());
+            byte[] ivbytes = new byte[IV_LENGTH];
+            random.nextBytes(ivbytes);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(ivbytes));
 
             CipherOutputStream cos = new CipherOutputStream(out, cipher);
             cos.write(randomBlock);
-            
-            return cos;
-        }
 
+            return S100MeteredStreams.output(cos, S100Metrics.ENCRYPT);
+        }
 
+        static Cipher newCipher() throws GeneralSecurityException {
+            return S100CryptoProviders.newCipher(TRANSFORMATION_NAME);
+        }
 
         public InputStream decrypt(InputStream in) throws GeneralSecurityException, IOException {
 
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION_NAME);
+            Cipher cipher = S100CryptoProviders.newCipher(TRANSFORMATION_NAME);
             cipher.init(Cipher.DECRYPT_MODE, key, createRandomIV());
 
             InputStream r = new CipherInputStream(in, cipher);
@@ -160,14 +432,45 @@ public abstract class S100Crypt {
                 r.read();
             }
 
-            return r;
+            return S100MeteredStreams.input(r, S100Metrics.DECRYPT);
+        }
+
+        @Override
+        public S100CryptSession newSession() throws GeneralSecurityException {
+            return new S100CryptSession.RandomIV(key);
+        }
+
+        @Override
+        Cipher initCipher(int mode) throws GeneralSecurityException {
+            Cipher cipher = newCipher();
+            cipher.init(mode, key, createRandomIV());
+            return cipher;
+        }
+
+        @Override
+        byte[] encryptPrefix() {
+            // see encrypt(OutputStream)
+            byte[] randomBlock = new byte[AES_BLOCK_SIZE];
+            new SecureRandom().nextBytes(randomBlock);
+            return randomBlock;
+        }
+
+        @Override
+        int decryptSkip() {
+            // see decrypt(InputStream)
+            return AES_BLOCK_SIZE;
+        }
+
+        @Override
+        boolean isPadded() {
+            return true;
         }
 
     }
 
     public static final class EmptyIVNoPadding extends S100Crypt {
         
-        private static final String TRANSFORMATION_NAME = "AES/CBC/NoPadding";
+        private static final String TRANSFORMATION_NAME = S100Cbc.TRANSFORMATION_NAME;
 
         private final IvParameterSpec iv;
 
@@ -181,23 +484,27 @@ public abstract class S100Crypt {
 
         @Override
         public InputStream encrypt(InputStream in) throws GeneralSecurityException, IOException {
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION_NAME);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-            return new CipherInputStream(in, cipher);
+            return new CipherInputStream(S100MeteredStreams.input(in, S100Metrics.ENCRYPT),
+                    initCipher(Cipher.ENCRYPT_MODE));
         }
 
         @Override
         public OutputStream encrypt(OutputStream out) throws GeneralSecurityException, IOException {
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION_NAME);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-            return new CipherOutputStream(out, cipher);
+            return S100MeteredStreams.output(new CipherOutputStream(out, initCipher(Cipher.ENCRYPT_MODE)),
+                    S100Metrics.ENCRYPT);
         }
 
         @Override
         public InputStream decrypt(InputStream in) throws GeneralSecurityException, IOException {
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION_NAME);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-            return new CipherInputStream(in, cipher);
+            return S100MeteredStreams.input(new CipherInputStream(in, initCipher(Cipher.DECRYPT_MODE)),
+                    S100Metrics.DECRYPT);
+        }
+
+        @Override
+        Cipher initCipher(int mode) throws GeneralSecurityException {
+            Cipher cipher = S100CryptoProviders.newCipher(TRANSFORMATION_NAME);
+            cipher.init(mode, key, iv);
+            return cipher;
         }
 
     }
@@ -0,0 +1,360 @@
+package no.ecc.s100.security;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+
+import no.ecc.s100.metrics.S100CryptEvent;
+import no.ecc.s100.metrics.S100Metrics;
+
+/**
+ * A reusable encryption and decryption context bound to a single key. Create
+ * one using {@link S100Crypt#newSession()}.
+ * <p>
+ * The ciphers are initialized once, and all operations write into buffers
+ * supplied by the caller, so there is no allocation per operation when
+ * {@link S100Metrics} and its Flight Recorder events are disabled.
+ * <p>
+ * A session is NOT thread safe. Use one session per thread, for example by
+ * keeping it in a {@link ThreadLocal}.
+ */
+public abstract class S100CryptSession {
+
+    private static final int BLOCK_SIZE = S100Crypt.AES_BLOCK_SIZE;
+
+    final Cipher encryptCipher;
+    final Cipher decryptCipher;
+
+    S100CryptSession(SecretKey key, IvParameterSpec encryptIv, IvParameterSpec decryptIv)
+            throws GeneralSecurityException {
+        encryptCipher = S100Cbc.newCipher();
+        encryptCipher.init(Cipher.ENCRYPT_MODE, key, encryptIv);
+        decryptCipher = S100Cbc.newCipher();
+        decryptCipher.init(Cipher.DECRYPT_MODE, key, decryptIv);
+    }
+
+    S100CryptSession(Cipher encryptCipher, Cipher decryptCipher) {
+        this.encryptCipher = encryptCipher;
+        this.decryptCipher = decryptCipher;
+    }
+
+    /**
+     * @return the number of bytes the encrypted result will have for the given
+     *         number of unencrypted bytes.
+     */
+    public abstract int encryptedLength(int unencryptedLength);
+
+    /**
+     * @return the number of bytes needed in the destination buffer to decrypt
+     *         the given number of encrypted bytes. The actual result might be
+     *         shorter.
+     */
+    public abstract int maxDecryptedLength(int encryptedLength);
+
+    /**
+     * Encrypt len bytes from in starting at inOff into out starting at outOff.
+     * The input and output regions must not overlap.
+     *
+     * @return the number of bytes written to out.
+     */
+    public final int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+            throws GeneralSecurityException {
+        S100CryptEvent event = S100Metrics.cryptStart(S100Metrics.ENCRYPT);
+        int n = doEncrypt(in, inOff, len, out, outOff);
+        S100Metrics.cryptEnd(event, len);
+        return n;
+    }
+
+    /**
+     * Decrypt len bytes from in starting at inOff into out starting at outOff.
+     * The input and output regions must not overlap.
+     *
+     * @return the number of bytes written to out.
+     */
+    public final int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+            throws GeneralSecurityException {
+        S100CryptEvent event = S100Metrics.cryptStart(S100Metrics.DECRYPT);
+        int n = doDecrypt(in, inOff, len, out, outOff);
+        S100Metrics.cryptEnd(event, n);
+        return n;
+    }
+
+    /**
+     * Encrypt all remaining bytes in the input buffer into the output buffer.
+     *
+     * @return the number of bytes written to out.
+     */
+    public final int encrypt(ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        S100CryptEvent event = S100Metrics.cryptStart(S100Metrics.ENCRYPT);
+        int len = in.remaining();
+        int n = doEncrypt(in, out);
+        S100Metrics.cryptEnd(event, len);
+        return n;
+    }
+
+    /**
+     * Decrypt all remaining bytes in the input buffer into the output buffer.
+     *
+     * @return the number of bytes written to out.
+     */
+    public final int decrypt(ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        S100CryptEvent event = S100Metrics.cryptStart(S100Metrics.DECRYPT);
+        int n = doDecrypt(in, out);
+        S100Metrics.cryptEnd(event, n);
+        return n;
+    }
+
+    abstract int doEncrypt(byte[] in, int inOff, int len, byte[] out, int outOff) throws GeneralSecurityException;
+
+    abstract int doDecrypt(byte[] in, int inOff, int len, byte[] out, int outOff) throws GeneralSecurityException;
+
+    abstract int doEncrypt(ByteBuffer in, ByteBuffer out) throws GeneralSecurityException;
+
+    abstract int doDecrypt(ByteBuffer in, ByteBuffer out) throws GeneralSecurityException;
+
+    private static void checkBlocks(int len) throws IllegalBlockSizeException {
+        if (len % BLOCK_SIZE != 0) {
+            throw new IllegalBlockSizeException("Input length not multiple of " + BLOCK_SIZE + " bytes: " + len);
+        }
+    }
+
+    private static void checkRoom(int available, int needed) throws ShortBufferException {
+        if (available < needed) {
+            throw new ShortBufferException("Need " + needed + " bytes in output buffer, not " + available);
+        }
+    }
+
+    static final class RandomIV extends S100CryptSession {
+
+        private final SecureRandom random = new SecureRandom();
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+
+        RandomIV(SecretKey key) throws GeneralSecurityException {
+            // The random IV is only chosen once per session. As every encryption
+            // start with a fresh random block that is discarded on decryption,
+            // the first cipher block is random anyway.
+            super(key, randomIV(), new IvParameterSpec(new byte[S100Crypt.IV_LENGTH]));
+        }
+
+        private static IvParameterSpec randomIV() {
+            byte[] ivbytes = new byte[S100Crypt.IV_LENGTH];
+            new SecureRandom().nextBytes(ivbytes);
+            return new IvParameterSpec(ivbytes);
+        }
+
+        @Override
+        public int encryptedLength(int unencryptedLength) {
+            return BLOCK_SIZE + (unencryptedLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+        }
+
+        @Override
+        public int maxDecryptedLength(int encryptedLength) {
+            return Math.max(0, encryptedLength - BLOCK_SIZE);
+        }
+
+        private int pad(int rem) {
+            byte p = (byte) (BLOCK_SIZE - rem);
+            for (int i = rem; i < BLOCK_SIZE; i++) {
+                block[i] = p;
+            }
+            return BLOCK_SIZE;
+        }
+
+        @Override
+        int doEncrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+                throws GeneralSecurityException {
+            checkRoom(out.length - outOff, encryptedLength(len));
+            int full = len - len % BLOCK_SIZE;
+            int rem = len - full;
+
+            random.nextBytes(block);
+            int n = encryptCipher.update(block, 0, BLOCK_SIZE, out, outOff);
+            n += encryptCipher.update(in, inOff, full, out, outOff + n);
+            System.arraycopy(in, inOff + full, block, 0, rem);
+            n += encryptCipher.doFinal(block, 0, pad(rem), out, outOff + n);
+            return n;
+        }
+
+        @Override
+        int doEncrypt(ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+            int len = in.remaining();
+            checkRoom(out.remaining(), encryptedLength(len));
+            int full = len - len % BLOCK_SIZE;
+            int rem = len - full;
+
+            random.nextBytes(block);
+            blockBuffer.clear();
+            int n = encryptCipher.update(blockBuffer, out);
+
+            int limit = in.limit();
+            in.limit(in.position() + full);
+            n += encryptCipher.update(in, out);
+            in.limit(limit);
+
+            in.get(block, 0, rem);
+            blockBuffer.clear().limit(pad(rem));
+            n += encryptCipher.doFinal(blockBuffer, out);
+            return n;
+        }
+
+        @Override
+        int doDecrypt(byte[] in, int inOff, int len, byte[] out, int outOff)
+                throws GeneralSecurityException {
+            checkDecryptLength(len);
+            checkRoom(out.length - outOff, maxDecryptedLength(len));
+
+            // "On decryption an arbitrary initialization vector can be used and
+            // after normal CBC decryption the first plain text block is
+            // discarded. The rest is the original plain text data file."
+            decryptCipher.update(in, inOff, BLOCK_SIZE, block, 0);
+            int n = decryptCipher.doFinal(in, inOff + BLOCK_SIZE, len - BLOCK_SIZE, out, outOff);
+            int end = outOff + n;
+            int p = padding(out[end - 1]);
+            for (int i = end - p; i < end; i++) {
+                if (out[i] != (byte) p) {
+                    throw new BadPaddingException("Illegal padding");
+                }
+            }
+            return n - p;
+        }
+
+        @Override
+        int doDecrypt(ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+            int len = in.remaining();
+            checkDecryptLength(len);
+            checkRoom(out.remaining(), maxDecryptedLength(len));
+
+            int limit = in.limit();
+            in.limit(in.position() + BLOCK_SIZE);
+            blockBuffer.clear();
+            decryptCipher.update(in, blockBuffer);
+            in.limit(limit);
+
+            int n = decryptCipher.doFinal(in, out);
+            int end = out.position();
+            int p = padding(out.get(end - 1));
+            for (int i = end - p; i < end; i++) {
+                if (out.get(i) != (byte) p) {
+                    throw new BadPaddingException("Illegal padding");
+                }
+            }
+            out.position(end - p);
+            return n - p;
+        }
+
+        private static void checkDecryptLength(int len) throws IllegalBlockSizeException {
+            checkBlocks(len);
+            if (len < 2 * BLOCK_SIZE) {
+                throw new IllegalBlockSizeException("Input too short: " + len);
+            }
+        }
+
+        /**
+         * @return the number of PKCS#7 padding bytes given the last decrypted
+         *         byte.
+         */
+        private static int padding(byte last) throws BadPaddingException {
+            int p = last & 0xFF;
+            if (p < 1 || p > BLOCK_SIZE) {
+                throw new BadPaddingException("Illegal padding");
+            }
+            return p;
+        }
+
+    }
+
+    /**
+     * A session for any {@link S100Crypt} using its initialized ciphers, prefix
+     * and skip. The ciphers handle padding and block checks.
+     */
+    static final class Generic extends S100CryptSession {
+
+        private final S100Crypt crypt;
+        private final int prefixLength;
+        private final int skip;
+        // the skipped and actual decrypted data when skip is not 0
+        private byte[] scratch = new byte[0];
+
+        Generic(S100Crypt crypt) throws GeneralSecurityException {
+            super(crypt.initCipher(Cipher.ENCRYPT_MODE), crypt.initCipher(Cipher.DECRYPT_MODE));
+            this.crypt = crypt;
+            this.prefixLength = crypt.encryptPrefix().length;
+            this.skip = crypt.decryptSkip();
+        }
+
+        @Override
+        public int encryptedLength(int unencryptedLength) {
+            return encryptCipher.getOutputSize(prefixLength + unencryptedLength);
+        }
+
+        @Override
+        public int maxDecryptedLength(int encryptedLength) {
+            return Math.max(0, decryptCipher.getOutputSize(encryptedLength) - skip);
+        }
+
+        @Override
+        int doEncrypt(byte[] in, int inOff, int len, byte[] out, int outOff) throws GeneralSecurityException {
+            checkRoom(out.length - outOff, encryptedLength(len));
+            byte[] prefix = crypt.encryptPrefix();
+            int n = prefix.length == 0 ? 0 : encryptCipher.update(prefix, 0, prefix.length, out, outOff);
+            return n + encryptCipher.doFinal(in, inOff, len, out, outOff + n);
+        }
+
+        @Override
+        int doEncrypt(ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+            checkRoom(out.remaining(), encryptedLength(in.remaining()));
+            byte[] prefix = crypt.encryptPrefix();
+            int n = prefix.length == 0 ? 0 : encryptCipher.update(ByteBuffer.wrap(prefix), out);
+            return n + encryptCipher.doFinal(in, out);
+        }
+
+        @Override
+        int doDecrypt(byte[] in, int inOff, int len, byte[] out, int outOff) throws GeneralSecurityException {
+            if (skip == 0) {
+                return decryptCipher.doFinal(in, inOff, len, out, outOff);
+            }
+            decryptScratch(len);
+            int n = decryptCipher.doFinal(in, inOff, len, scratch, 0) - skip;
+            checkDecrypted(n);
+            checkRoom(out.length - outOff, n);
+            System.arraycopy(scratch, skip, out, outOff, n);
+            return n;
+        }
+
+        @Override
+        int doDecrypt(ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+            if (skip == 0) {
+                return decryptCipher.doFinal(in, out);
+            }
+            decryptScratch(in.remaining());
+            int n = decryptCipher.doFinal(in, ByteBuffer.wrap(scratch)) - skip;
+            checkDecrypted(n);
+            checkRoom(out.remaining(), n);
+            out.put(scratch, skip, n);
+            return n;
+        }
+
+        private void decryptScratch(int encryptedLength) {
+            int size = decryptCipher.getOutputSize(encryptedLength);
+            if (scratch.length < size) {
+                scratch = new byte[size];
+            }
+        }
+
+        private static void checkDecrypted(int n) throws IllegalBlockSizeException {
+            if (n < 0) {
+                throw new IllegalBlockSizeException("Input too short");
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,334 @@
+package no.ecc.s100.security;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * Select the JCA {@link Provider} used for AES/CBC and SHA256withDSA by all
+ * classes in this package. By default the JCA provider preference order is
+ * used, like {@link Cipher#getInstance(String)}.
+ * <p>
+ * A provider can be given by name using the system properties
+ * {@value #CIPHER_PROVIDER_PROPERTY} and {@value #SIGNATURE_PROVIDER_PROPERTY},
+ * where "BC" is BouncyCastle even if it is not registered, or set using
+ * {@link #setCipherProvider(Provider)} and
+ * {@link #setSignatureProvider(Provider)}. With an unknown provider name, the
+ * operations needing the provider fail with a {@link GeneralSecurityException}.
+ * <p>
+ * {@link #selectFastest(Duration)} run a short benchmark of each available
+ * provider, including BouncyCastle, and select the fastest. It is only run when
+ * called, as it takes a while.
+ */
+public final class S100CryptoProviders {
+
+    public static final String CIPHER_PROVIDER_PROPERTY = "no.ecc.s100.cipherProvider";
+    public static final String SIGNATURE_PROVIDER_PROPERTY = "no.ecc.s100.signatureProvider";
+
+    private static final String BOUNCY_CASTLE = "BC";
+    private static final String[] CIPHER_TRANSFORMATIONS = { S100Cbc.TRANSFORMATION_NAME,
+            "AES/CBC/PKCS5Padding" };
+    private static final Duration DEFAULT_BENCHMARK_TIME = Duration.ofMillis(100);
+    private static final int BENCHMARK_DATA_SIZE = 64 * 1024;
+
+    private static volatile Provider cipherProvider = provider(System.getProperty(CIPHER_PROVIDER_PROPERTY));
+    private static volatile Provider signatureProvider = provider(System.getProperty(SIGNATURE_PROVIDER_PROPERTY));
+
+    private S100CryptoProviders() {
+    }
+
+    /**
+     * @param provider
+     *            the provider for AES/CBC, or null for the JCA default.
+     */
+    public static void setCipherProvider(Provider provider) {
+        cipherProvider = provider;
+    }
+
+    /**
+     * @param provider
+     *            the provider for SHA256withDSA, or null for the JCA default.
+     */
+    public static void setSignatureProvider(Provider provider) {
+        signatureProvider = provider;
+    }
+
+    /**
+     * @return the name of the provider actually used for AES/CBC.
+     */
+    public static String getCipherProviderName() {
+        try {
+            return newCipher(S100Cbc.TRANSFORMATION_NAME).getProvider().getName();
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the name of the provider actually used for SHA256withDSA.
+     */
+    public static String getSignatureProviderName() {
+        try {
+            return newSignature().getProvider().getName();
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    static Cipher newCipher(String transformation) throws GeneralSecurityException {
+        Provider provider = cipherProvider;
+        return provider == null ? Cipher.getInstance(transformation) : Cipher.getInstance(transformation, provider);
+    }
+
+    static Signature newSignature() throws GeneralSecurityException {
+        Provider provider = signatureProvider;
+        return provider == null ? Signature.getInstance(S100Signature.ALGORITHM)
+                : Signature.getInstance(S100Signature.ALGORITHM, provider);
+    }
+
+    /**
+     * @return the named provider, null for no name, or a provider without any
+     *         services if not found, so that this class can always be loaded.
+     */
+    static Provider provider(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        try {
+            Provider provider = Security.getProvider(name);
+            if (provider == null && BOUNCY_CASTLE.equals(name)) {
+                provider = new BouncyCastleProvider();
+            }
+            if (provider != null) {
+                return provider;
+            }
+            return new UnknownProvider(name, "Unknown security provider: " + name);
+        } catch (RuntimeException | LinkageError e) {
+            return new UnknownProvider(name, "Could not load security provider " + name + ": " + e);
+        }
+    }
+
+    /**
+     * Same as {@link #selectFastest(Duration)} measuring each provider for
+     * 100ms.
+     */
+    public static Selection selectFastest() {
+        return selectFastest(DEFAULT_BENCHMARK_TIME);
+    }
+
+    /**
+     * Benchmark AES/CBC decryption and SHA256withDSA verification for each
+     * installed provider that support them and BouncyCastle, and use the
+     * fastest from now on.
+     * 
+     * @param timePerProvider
+     *            how long to measure each provider.
+     * @return the measured throughput and the selected providers.
+     */
+    public static Selection selectFastest(Duration timePerProvider) {
+        Map<String, Double> cipherResults = new LinkedHashMap<>();
+        Map<String, Double> signatureResults = new LinkedHashMap<>();
+        Provider fastestCipher = null;
+        Provider fastestSignature = null;
+        double bestCipher = 0;
+        double bestSignature = 0;
+
+        KeyPair keyPair;
+        byte[] signature;
+        byte[] data = new byte[BENCHMARK_DATA_SIZE];
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("DSA");
+            generator.initialize(2048);
+            keyPair = generator.generateKeyPair();
+            Signature signer = Signature.getInstance(S100Signature.ALGORITHM);
+            signer.initSign(keyPair.getPrivate());
+            signer.update(data);
+            signature = signer.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (Provider provider : candidates()) {
+            try {
+                double mbPerSecond = benchmarkCipher(provider, data, timePerProvider);
+                cipherResults.put(provider.getName(), Double.valueOf(mbPerSecond));
+                if (mbPerSecond > bestCipher) {
+                    bestCipher = mbPerSecond;
+                    fastestCipher = provider;
+                }
+            } catch (GeneralSecurityException | RuntimeException e) {
+                // provider does not support AES/CBC
+            }
+            try {
+                double verifiesPerSecond = benchmarkSignature(provider, keyPair, data, signature, timePerProvider);
+                signatureResults.put(provider.getName(), Double.valueOf(verifiesPerSecond));
+                if (verifiesPerSecond > bestSignature) {
+                    bestSignature = verifiesPerSecond;
+                    fastestSignature = provider;
+                }
+            } catch (GeneralSecurityException | RuntimeException e) {
+                // provider does not support SHA256withDSA
+            }
+        }
+
+        if (fastestCipher != null) {
+            cipherProvider = fastestCipher;
+        }
+        if (fastestSignature != null) {
+            signatureProvider = fastestSignature;
+        }
+        return new Selection(getCipherProviderName(), getSignatureProviderName(), cipherResults, signatureResults);
+    }
+
+    private static List<Provider> candidates() {
+        List<Provider> candidates = new ArrayList<>();
+        boolean hasBouncyCastle = false;
+        for (Provider provider : Security.getProviders()) {
+            candidates.add(provider);
+            hasBouncyCastle |= BOUNCY_CASTLE.equals(provider.getName());
+        }
+        if (!hasBouncyCastle) {
+            try {
+                candidates.add(new BouncyCastleProvider());
+            } catch (RuntimeException | LinkageError e) {
+                // benchmark the installed providers only
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return decrypted MB per second.
+     */
+    private static double benchmarkCipher(Provider provider, byte[] data, Duration time)
+            throws GeneralSecurityException {
+        for (String transformation : CIPHER_TRANSFORMATIONS) {
+            Cipher.getInstance(transformation, provider);
+        }
+        Cipher cipher = Cipher.getInstance(S100Cbc.TRANSFORMATION_NAME, provider);
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(new byte[16], "AES"),
+                new IvParameterSpec(new byte[S100Crypt.IV_LENGTH]));
+        byte[] out = new byte[data.length];
+        // warm up before measuring
+        long end = System.nanoTime() + time.toNanos() / 2;
+        while (System.nanoTime() < end) {
+            cipher.update(data, 0, data.length, out, 0);
+        }
+        long start = System.nanoTime();
+        end = start + time.toNanos();
+        long bytes = 0;
+        long now;
+        do {
+            cipher.update(data, 0, data.length, out, 0);
+            bytes += data.length;
+        } while ((now = System.nanoTime()) < end);
+        return bytes / 1e6 / ((now - start) / 1e9);
+    }
+
+    /**
+     * @return verifications per second.
+     */
+    private static double benchmarkSignature(Provider provider, KeyPair keyPair, byte[] data, byte[] signature,
+            Duration time) throws GeneralSecurityException {
+        Signature verifier = Signature.getInstance(S100Signature.ALGORITHM, provider);
+        long end = System.nanoTime() + time.toNanos() / 2;
+        while (System.nanoTime() < end) {
+            verify(verifier, keyPair, data, signature);
+        }
+        long start = System.nanoTime();
+        end = start + time.toNanos();
+        long count = 0;
+        long now;
+        do {
+            verify(verifier, keyPair, data, signature);
+            count++;
+        } while ((now = System.nanoTime()) < end);
+        return count / ((now - start) / 1e9);
+    }
+
+    private static void verify(Signature verifier, KeyPair keyPair, byte[] data, byte[] signature)
+            throws GeneralSecurityException {
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        if (!verifier.verify(signature)) {
+            throw new GeneralSecurityException("Signature not valid using " + verifier.getProvider().getName());
+        }
+    }
+
+    /**
+     * Stand in for a provider given by name that could not be found.
+     */
+    private static final class UnknownProvider extends Provider {
+
+        private static final long serialVersionUID = 1L;
+
+        UnknownProvider(String name, String info) {
+            super(name, "0", info);
+        }
+
+    }
+
+    /**
+     * The result of {@link S100CryptoProviders#selectFastest(Duration)}.
+     */
+    public static final class Selection {
+
+        private final String cipherProviderName;
+        private final String signatureProviderName;
+        private final Map<String, Double> cipherMBPerSecond;
+        private final Map<String, Double> signatureVerifiesPerSecond;
+
+        private Selection(String cipherProviderName, String signatureProviderName,
+                Map<String, Double> cipherMBPerSecond, Map<String, Double> signatureVerifiesPerSecond) {
+            this.cipherProviderName = cipherProviderName;
+            this.signatureProviderName = signatureProviderName;
+            this.cipherMBPerSecond = Collections.unmodifiableMap(cipherMBPerSecond);
+            this.signatureVerifiesPerSecond = Collections.unmodifiableMap(signatureVerifiesPerSecond);
+        }
+
+        public String getCipherProviderName() {
+            return cipherProviderName;
+        }
+
+        public String getSignatureProviderName() {
+            return signatureProviderName;
+        }
+
+        /**
+         * @return AES/CBC decryption MB per second by provider name.
+         */
+        public Map<String, Double> getCipherMBPerSecond() {
+            return cipherMBPerSecond;
+        }
+
+        /**
+         * @return SHA256withDSA verifications per second by provider name.
+         */
+        public Map<String, Double> getSignatureVerifiesPerSecond() {
+            return signatureVerifiesPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "AES/CBC: " + cipherProviderName + " " + cipherMBPerSecond + ", " + S100Signature.ALGORITHM + ": "
+                    + signatureProviderName + " " + signatureVerifiesPerSecond;
+        }
+
+    }
+
+}
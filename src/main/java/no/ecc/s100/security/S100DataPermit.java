@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Date;
 
 import javax.xml.stream.XMLStreamConstants;
@@ -25,14 +27,14 @@ public class S100DataPermit implements Comparable<S100DataPermit> {
 
     static final String PERMIT_ELEMENT = "permit";
     static final String DATASET_PERMIT_ELEMENT = "datasetPermit";
-    private static final String FILENAME_ELEMENT = "filename";
-    private static final String EDITION_NUMBER_ELEMENT = "editionNumber";
-    private static final String EXPIRY_ELEMENT = "expiry";
-    private static final String ENCRYPTED_KEY_ELEMENT = "encryptedKey";
+    static final String FILENAME_ELEMENT = "filename";
+    static final String EDITION_NUMBER_ELEMENT = "editionNumber";
+    static final String EXPIRY_ELEMENT = "expiry";
+    static final String ENCRYPTED_KEY_ELEMENT = "encryptedKey";
 
     static final String EXPIRY_DATE_FORMAT = "yyyy-MM-dd";
 
-    private S100DataPermit(String fileName, int edtn, Date permitEndDate, String encryptedDataKey,
+    S100DataPermit(String fileName, int edtn, Date permitEndDate, String encryptedDataKey,
             S100ProductSpecification productSpecification) {
         this.fileName = fileName;
         this.edtn = edtn;
@@ -88,6 +90,14 @@ public class S100DataPermit implements Comparable<S100DataPermit> {
         return new S100DataPermit(fileName, edtn, permitEndDate, encryptedDataKey, productSpecification);
     }
 
+    /**
+     * @return the hex encoded data key decrypted using the given HW_ID.
+     */
+    public String decryptDataKey(String hwId) throws GeneralSecurityException {
+        S100Crypt crypt = new S100Crypt.EmptyIVNoPadding(hwId);
+        return Hex.toString(crypt.decrypt(Hex.fromString(encryptedDataKey)));
+    }
+
     public String getFileName() {
         return fileName;
     }
@@ -104,6 +114,17 @@ public class S100DataPermit implements Comparable<S100DataPermit> {
         return permitEndDate;
     }
 
+    /**
+     * @return the permit end date as a {@link LocalDate} in the default time
+     *         zone, which is how the expiry date is parsed, or null.
+     */
+    public LocalDate getPermitEndLocalDate() {
+        if (permitEndDate == null) {
+            return null;
+        }
+        return permitEndDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
     public String getEncryptedDataKey() {
         return encryptedDataKey;
     }
@@ -0,0 +1,315 @@
+package no.ecc.s100.security;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import no.ecc.s100.S100ProductSpecification;
+
+/**
+ * A columnar collection of data permits, stored in primitive arrays with one
+ * row per file name. There is no object per permit, only the file name
+ * {@link String}. The lookup by file name is an open addressing hash table of
+ * row numbers in an int array using the hash code cached by the
+ * {@link String}. Objects like
+ * {@link Date}, the hex encoded key or a {@link S100DataPermit} are only
+ * created when asked for.
+ * <p>
+ * When a permit is added for a file name that already has a permit, the
+ * newest is kept as in {@link S100PermitIndex}. Removing a permit move the last
+ * row into its place, so row numbers are only stable as long as nothing is
+ * removed.
+ * <p>
+ * This class is not thread safe, but can be read from many threads as long as
+ * it is not modified.
+ */
+public class S100DataPermitTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // row + 1 by file name hash with linear probing, 0 is empty. At most half full.
+    private int[] slots;
+    private String[] fileNames;
+    private int[] edtns;
+    private int[] permitEndEpochDays;
+    private long[] encryptedDataKeyHighs;
+    private long[] encryptedDataKeyLows;
+    private short[] productSpecificationNumbers;
+    private int size;
+
+    public S100DataPermitTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public S100DataPermitTable(int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+        slots = new int[tableSize(Math.max(1, initialCapacity))];
+    }
+
+    public S100DataPermitTable(Collection<S100DataPermit> dataPermits) {
+        this(dataPermits.size());
+        addAll(dataPermits);
+    }
+
+    /**
+     * Add the given permit unless a newer permit for the same file name already
+     * exist.
+     * 
+     * @return true if the given permit was added.
+     */
+    public boolean add(S100DataPermit dataPermit) {
+        ByteBuffer key = S100CompactDataPermit.encryptedKey(dataPermit);
+        return add(dataPermit.getFileName(), dataPermit.getEdtn(), S100CompactDataPermit.epochDay(dataPermit),
+                key.getLong(0), key.getLong(8), dataPermit.getProductSpecification().getNumber());
+    }
+
+    public boolean add(S100CompactDataPermit dataPermit) {
+        return add(dataPermit.getFileName(), dataPermit.getEdtn(), dataPermit.getPermitEndEpochDay(),
+                dataPermit.getEncryptedDataKeyHigh(), dataPermit.getEncryptedDataKeyLow(),
+                dataPermit.getProductSpecificationNumber());
+    }
+
+    public void addAll(Collection<S100DataPermit> dataPermits) {
+        for (S100DataPermit dataPermit : dataPermits) {
+            add(dataPermit);
+        }
+    }
+
+    private boolean add(String fileName, int edtn, int permitEndEpochDay, long keyHigh, long keyLow,
+            int productSpecificationNumber) {
+        int slot = slot(fileName);
+        int row;
+        if (slots[slot] != 0) {
+            row = slots[slot] - 1;
+            if (!isNewer(edtn, permitEndEpochDay, edtns[row], permitEndEpochDays[row])) {
+                return false;
+            }
+        } else {
+            if (size == fileNames.length) {
+                grow();
+            }
+            row = size++;
+            fileNames[row] = fileName;
+            if (2 * size > slots.length) {
+                rehash(2 * slots.length);
+                slot = slot(fileName);
+            }
+            slots[slot] = row + 1;
+        }
+        edtns[row] = edtn;
+        permitEndEpochDays[row] = permitEndEpochDay;
+        encryptedDataKeyHighs[row] = keyHigh;
+        encryptedDataKeyLows[row] = keyLow;
+        productSpecificationNumbers[row] = (short) productSpecificationNumber;
+        return true;
+    }
+
+    /**
+     * @return true if a permit for the given file name was removed.
+     */
+    public boolean remove(String fileName) {
+        int slot = slot(fileName);
+        if (slots[slot] == 0) {
+            return false;
+        }
+        int row = slots[slot] - 1;
+        deleteSlot(slot);
+        int last = --size;
+        if (row != last) {
+            slots[slot(fileNames[last])] = row + 1;
+            fileNames[row] = fileNames[last];
+            edtns[row] = edtns[last];
+            permitEndEpochDays[row] = permitEndEpochDays[last];
+            encryptedDataKeyHighs[row] = encryptedDataKeyHighs[last];
+            encryptedDataKeyLows[row] = encryptedDataKeyLows[last];
+            productSpecificationNumbers[row] = productSpecificationNumbers[last];
+        }
+        fileNames[last] = null;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the row of the permit for the given file name, or -1.
+     */
+    public int indexOf(String fileName) {
+        return slots[slot(fileName)] - 1;
+    }
+
+    public String getFileName(int row) {
+        checkRow(row);
+        return fileNames[row];
+    }
+
+    public int getEdtn(int row) {
+        checkRow(row);
+        return edtns[row];
+    }
+
+    /**
+     * @return the expiry as epoch day, or {@link Integer#MIN_VALUE} if none.
+     */
+    public int getPermitEndEpochDay(int row) {
+        checkRow(row);
+        return permitEndEpochDays[row];
+    }
+
+    public LocalDate getPermitEndLocalDate(int row) {
+        return S100CompactDataPermit.localDate(getPermitEndEpochDay(row));
+    }
+
+    public Date getPermitEndDate(int row) {
+        return S100CompactDataPermit.date(getPermitEndEpochDay(row));
+    }
+
+    public String getEncryptedDataKey(int row) {
+        checkRow(row);
+        return S100CompactDataPermit.hex(encryptedDataKeyHighs[row], encryptedDataKeyLows[row]);
+    }
+
+    public S100ProductSpecification getProductSpecification(int row) {
+        checkRow(row);
+        return S100ProductSpecification.valueOf(productSpecificationNumbers[row]);
+    }
+
+    public S100CompactDataPermit getCompact(int row) {
+        checkRow(row);
+        return new S100CompactDataPermit(fileNames[row], edtns[row], permitEndEpochDays[row],
+                encryptedDataKeyHighs[row], encryptedDataKeyLows[row], productSpecificationNumbers[row]);
+    }
+
+    public S100DataPermit get(int row) {
+        return getCompact(row).toDataPermit();
+    }
+
+    /**
+     * @return the permit for the given file name, or null.
+     */
+    public S100DataPermit get(String fileName) {
+        int row = indexOf(fileName);
+        return row == -1 ? null : get(row);
+    }
+
+    /**
+     * @return a {@link List} view of all permits in row order. The permits are
+     *         created as they are accessed.
+     */
+    public List<S100DataPermit> getDataPermits() {
+        return new AbstractList<S100DataPermit>() {
+
+            @Override
+            public S100DataPermit get(int index) {
+                return S100DataPermitTable.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " size " + size);
+        }
+    }
+
+    /**
+     * @return the slot with the row of the given file name, or the empty slot
+     *         where it would be.
+     */
+    private int slot(String fileName) {
+        int mask = slots.length - 1;
+        int i = hash(fileName) & mask;
+        while (true) {
+            int r = slots[i];
+            if (r == 0 || fileNames[r - 1].equals(fileName)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Empty the given slot and move later entries of the same probe sequence
+     * back, so that no lookup stop too early.
+     */
+    private void deleteSlot(int i) {
+        int mask = slots.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            int r = slots[j];
+            if (r == 0) {
+                break;
+            }
+            int home = hash(fileNames[r - 1]) & mask;
+            // move the entry unless its home slot is cyclically in (i, j]
+            boolean stay = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stay) {
+                slots[i] = r;
+                i = j;
+            }
+        }
+        slots[i] = 0;
+    }
+
+    private void rehash(int tableSize) {
+        slots = new int[tableSize];
+        for (int row = 0; row < size; row++) {
+            slots[slot(fileNames[row])] = row + 1;
+        }
+    }
+
+    private static int hash(String fileName) {
+        int h = fileName.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return a power of two table size that is at most half full with the
+     *         given number of rows.
+     */
+    private static int tableSize(int rows) {
+        return Integer.highestOneBit(Math.max(1, 2 * rows - 1)) << 1;
+    }
+
+    private void allocate(int capacity) {
+        fileNames = new String[capacity];
+        edtns = new int[capacity];
+        permitEndEpochDays = new int[capacity];
+        encryptedDataKeyHighs = new long[capacity];
+        encryptedDataKeyLows = new long[capacity];
+        productSpecificationNumbers = new short[capacity];
+    }
+
+    private void grow() {
+        int capacity = fileNames.length + (fileNames.length >> 1) + 1;
+        fileNames = Arrays.copyOf(fileNames, capacity);
+        edtns = Arrays.copyOf(edtns, capacity);
+        permitEndEpochDays = Arrays.copyOf(permitEndEpochDays, capacity);
+        encryptedDataKeyHighs = Arrays.copyOf(encryptedDataKeyHighs, capacity);
+        encryptedDataKeyLows = Arrays.copyOf(encryptedDataKeyLows, capacity);
+        productSpecificationNumbers = Arrays.copyOf(productSpecificationNumbers, capacity);
+    }
+
+    /**
+     * Same as {@link S100PermitIndex#isNewer(S100DataPermit, S100DataPermit)}.
+     */
+    private static boolean isNewer(int edtn, int permitEndEpochDay, int otherEdtn, int otherPermitEndEpochDay) {
+        if (edtn != otherEdtn) {
+            return edtn > otherEdtn;
+        }
+        // NO_EXPIRY is Integer.MIN_VALUE, so a permit with expiry is newer than one without
+        return permitEndEpochDay > otherPermitEndEpochDay;
+    }
+
+}
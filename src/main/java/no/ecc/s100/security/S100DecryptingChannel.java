@@ -0,0 +1,181 @@
+package no.ecc.s100.security;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * A read only {@link SeekableByteChannel} that decrypt an encrypted
+ * {@link SeekableByteChannel} on demand, so that any byte range of the
+ * unencrypted data can be read without decrypting everything in front of it.
+ * Create it using {@link S100Crypt#decrypt(SeekableByteChannel)}.
+ * <p>
+ * Positions and size are those of the unencrypted data, with the random first
+ * block and the padding of {@link S100Crypt.RandomIV} removed. Reading from a
+ * new position only need the previous cipher text block as IV, and
+ * sequential reads continue the cipher without seeking.
+ * <p>
+ * Like other channels, this is not safe for concurrent reads from many
+ * threads.
+ */
+public final class S100DecryptingChannel implements SeekableByteChannel {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BLOCK_SIZE = S100Cbc.BLOCK_SIZE;
+
+    private final SeekableByteChannel in;
+    private final SecretKey key;
+    private final Cipher cipher;
+    private final int skip;
+    private final long size;
+
+    private final byte[] encrypted = new byte[BUFFER_SIZE];
+    private final byte[] decrypted = new byte[BUFFER_SIZE];
+    // cipher text offset of decrypted[0], and number of valid bytes in decrypted
+    private long decryptedStart;
+    private int decryptedLength;
+    // the cipher text offset the cipher state continues from, or -1
+    private long cipherPosition = -1;
+
+    private long position;
+    private boolean open = true;
+
+    S100DecryptingChannel(S100Crypt crypt, SeekableByteChannel in) throws GeneralSecurityException, IOException {
+        this.in = in;
+        this.key = crypt.key;
+        this.cipher = S100Cbc.newCipher();
+        this.skip = crypt.decryptSkip();
+
+        long encryptedSize = in.size();
+        if (encryptedSize % BLOCK_SIZE != 0) {
+            throw new IOException("Encrypted size not multiple of " + BLOCK_SIZE + " bytes: " + encryptedSize);
+        }
+        long s = encryptedSize - skip;
+        if (crypt.isPadded()) {
+            if (encryptedSize < skip + BLOCK_SIZE) {
+                throw new IOException("Encrypted data too short: " + encryptedSize);
+            }
+            fill(encryptedSize - BLOCK_SIZE);
+            s -= S100Cbc.paddingLength(decrypted, 0);
+        }
+        this.size = Math.max(0, s);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+        int n = 0;
+        while (dst.hasRemaining() && position < size) {
+            long offset = position + skip;
+            if (offset < decryptedStart || offset >= decryptedStart + decryptedLength) {
+                try {
+                    fill(offset - offset % BLOCK_SIZE);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+            }
+            int from = (int) (offset - decryptedStart);
+            int count = (int) Math.min(Math.min(decryptedLength - from, dst.remaining()), size - position);
+            dst.put(decrypted, from, count);
+            position += count;
+            n += count;
+        }
+        return n;
+    }
+
+    /**
+     * Decrypt as many whole blocks as fit into the buffer starting at the given
+     * block aligned cipher text offset.
+     */
+    private void fill(long blockStart) throws GeneralSecurityException, IOException {
+        int length = (int) Math.min(BUFFER_SIZE, in.size() - blockStart);
+        if (blockStart != cipherPosition) {
+            byte[] iv = null;
+            if (blockStart > 0) {
+                iv = new byte[BLOCK_SIZE];
+                readFully(blockStart - BLOCK_SIZE, iv, BLOCK_SIZE);
+            }
+            S100Cbc.initDecrypt(cipher, key, iv);
+        }
+        readFully(blockStart, encrypted, length);
+        decryptedLength = cipher.update(encrypted, 0, length, decrypted, 0);
+        decryptedStart = blockStart;
+        cipherPosition = blockStart + length;
+    }
+
+    private void readFully(long offset, byte[] b, int length) throws IOException {
+        in.position(offset);
+        ByteBuffer buffer = ByteBuffer.wrap(b, 0, length);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) == -1) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    /**
+     * @return the size of the unencrypted data.
+     */
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Close this and the encrypted channel.
+     */
+    @Override
+    public void close() throws IOException {
+        open = false;
+        in.close();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+}
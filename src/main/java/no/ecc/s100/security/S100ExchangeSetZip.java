@@ -0,0 +1,204 @@
+package no.ecc.s100.security;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLStreamException;
+
+import no.ecc.s100.S100ProductSpecification;
+import no.ecc.s100.utility.FileUtils;
+
+/**
+ * Read a S-100 exchange set directly from a ZIP file without extracting it.
+ * Entries are located by file name and product specification directory, and
+ * data sets can be decrypted, and optionally verified, as streams.
+ */
+public class S100ExchangeSetZip implements Closeable {
+
+    private final ZipFile zipFile;
+
+    public S100ExchangeSetZip(Path zip) throws IOException {
+        this.zipFile = new ZipFile(zip.toFile());
+    }
+
+    /**
+     * @return the name of the {@value S100PermitFile#PERMIT_DOT_XML} entry, or
+     *         null if there is none.
+     */
+    public String getPermitFileEntryName() {
+        return findByFileName(S100PermitFile.PERMIT_DOT_XML);
+    }
+
+    public S100PermitFile readPermitFile(S100ManufacturerLookup manufacturerLookup)
+            throws IOException, XMLStreamException {
+        try (InputStream in = open(requirePermitFileEntryName())) {
+            return new S100PermitFile(manufacturerLookup, in);
+        }
+    }
+
+    /**
+     * @return a {@link S100PermitFileReader} for the permit file. The caller
+     *         must close it.
+     */
+    public S100PermitFileReader permitFileReader() throws IOException, XMLStreamException {
+        InputStream in = open(requirePermitFileEntryName());
+        try {
+            return new S100PermitFileReader(in) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        in.close();
+                    }
+                }
+            };
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the name of the catalogue entry for the given product
+     *         specification, or null if there is none.
+     */
+    public String getCatalogueEntryName(S100ProductSpecification productSpecification) {
+        return findByFileName(productSpecification.exchangeSetCatalogueFileName());
+    }
+
+    /**
+     * @return the names of all file entries in the directory of the given
+     *         product specification, except the catalogue.
+     */
+    public List<String> getDataSetEntryNames(S100ProductSpecification productSpecification) {
+        String directoryName = productSpecification.exchangeSetDirectoryName();
+        String catalogueFileName = productSpecification.exchangeSetCatalogueFileName();
+        List<String> r = new ArrayList<>();
+        for (Enumeration<? extends ZipEntry> en = zipFile.entries(); en.hasMoreElements();) {
+            ZipEntry entry = en.nextElement();
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.getName();
+            if (isInDirectory(name, directoryName) && !catalogueFileName.equals(FileUtils.getBaseName(name))) {
+                r.add(name);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @return the unencrypted content of the given entry. The caller must close
+     *         it.
+     */
+    public InputStream open(String entryName) throws IOException {
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
+            throw new IOException("No entry " + entryName + " in " + zipFile.getName());
+        }
+        return zipFile.getInputStream(entry);
+    }
+
+    /**
+     * @return the decrypted content of the given entry. The caller must close
+     *         it.
+     */
+    public InputStream decrypt(String entryName, S100Crypt crypt) throws IOException, GeneralSecurityException {
+        InputStream in = open(entryName);
+        try {
+            return crypt.decrypt(in);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Decrypt the given entry using the data key from the matching permit in
+     * the given {@link S100PermitFile}.
+     * 
+     * @throws GeneralSecurityException
+     *             if there is no permit for the entry.
+     */
+    public InputStream decrypt(String entryName, S100PermitFile permitFile)
+            throws IOException, GeneralSecurityException {
+        return decrypt(entryName, crypt(entryName, permitFile));
+    }
+
+    /**
+     * Decrypt the given entry and verify its signature in the same pass. See
+     * {@link S100VerifyingDecryptor#decrypt(InputStream, String)}.
+     */
+    public InputStream decryptAndVerify(String entryName, S100Crypt crypt, PublicKey publicKey,
+            String signatureBase64) throws IOException, GeneralSecurityException {
+        InputStream in = open(entryName);
+        try {
+            return new S100VerifyingDecryptor(crypt, publicKey).decrypt(in, signatureBase64);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public InputStream decryptAndVerify(String entryName, S100PermitFile permitFile, PublicKey publicKey,
+            String signatureBase64) throws IOException, GeneralSecurityException {
+        return decryptAndVerify(entryName, crypt(entryName, permitFile), publicKey, signatureBase64);
+    }
+
+    private S100Crypt crypt(String entryName, S100PermitFile permitFile) throws GeneralSecurityException {
+        String fileName = FileUtils.getBaseName(entryName);
+        S100ProductSpecification productSpecification = S100ProductSpecification.parseOrNull(fileName);
+        if (productSpecification != null) {
+            for (S100DataPermit permit : permitFile.get(productSpecification)) {
+                if (permit.getFileName().equals(fileName)) {
+                    return new S100Crypt.RandomIV(permit.decryptDataKey(permitFile.getHwId()));
+                }
+            }
+        }
+        throw new GeneralSecurityException("No permit for " + fileName);
+    }
+
+    private String requirePermitFileEntryName() throws IOException {
+        String name = getPermitFileEntryName();
+        if (name == null) {
+            throw new IOException("No " + S100PermitFile.PERMIT_DOT_XML + " in " + zipFile.getName());
+        }
+        return name;
+    }
+
+    private String findByFileName(String fileName) {
+        for (Enumeration<? extends ZipEntry> en = zipFile.entries(); en.hasMoreElements();) {
+            ZipEntry entry = en.nextElement();
+            if (!entry.isDirectory() && fileName.equalsIgnoreCase(FileUtils.getBaseName(entry.getName()))) {
+                return entry.getName();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInDirectory(String entryName, String directoryName) {
+        String[] parts = entryName.split("/");
+        for (int i = 0; i < parts.length - 1; i++) {
+            if (parts[i].equals(directoryName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+}
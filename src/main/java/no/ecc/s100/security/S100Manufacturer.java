@@ -2,6 +2,7 @@ package no.ecc.s100.security;
 
 import java.security.GeneralSecurityException;
 
+import no.ecc.s100.metrics.S100Metrics;
 import no.ecc.s100.utility.Hex;
 
 public class S100Manufacturer {
@@ -18,6 +19,17 @@ public class S100Manufacturer {
         return id;
     }
 
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * @return a reusable session with the key schedule of this manufacturer.
+     */
+    S100CryptSession newSession() throws GeneralSecurityException {
+        return new S100Crypt.EmptyIVNoPadding(key).newSession();
+    }
+
     public String encrypt(String unencrypted) throws GeneralSecurityException {
         S100Crypt c = new S100Crypt.EmptyIVNoPadding(key);
         return Hex.toString(c.encrypt(Hex.fromString(unencrypted)));
@@ -25,7 +37,9 @@ public class S100Manufacturer {
 
     public String decrypt(String encrypted) throws GeneralSecurityException {
         S100Crypt c = new S100Crypt.EmptyIVNoPadding(key);
-        return Hex.toString(c.decrypt(Hex.fromString(encrypted)));
+        String decrypted = Hex.toString(c.decrypt(Hex.fromString(encrypted)));
+        S100Metrics.hwIdDecrypted(id);
+        return decrypted;
     }
 
 }
@@ -0,0 +1,134 @@
+package no.ecc.s100.security;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import no.ecc.s100.metrics.S100CryptEvent;
+import no.ecc.s100.metrics.S100Metrics;
+
+/**
+ * Streams that report the unencrypted bytes passing through them to
+ * {@link S100Metrics} when the end is reached or the stream is closed. The
+ * given stream is returned as is when the metrics are not enabled.
+ */
+final class S100MeteredStreams {
+
+    private S100MeteredStreams() {
+    }
+
+    /**
+     * @param operation
+     *            {@link S100Metrics#ENCRYPT} or {@link S100Metrics#DECRYPT}
+     */
+    static InputStream input(InputStream in, String operation) {
+        S100CryptEvent event = S100Metrics.cryptStart(operation);
+        return event == null ? in : new MeteredInputStream(in, event);
+    }
+
+    /**
+     * @param operation
+     *            {@link S100Metrics#ENCRYPT} or {@link S100Metrics#DECRYPT}
+     */
+    static OutputStream output(OutputStream out, String operation) {
+        S100CryptEvent event = S100Metrics.cryptStart(operation);
+        return event == null ? out : new MeteredOutputStream(out, event);
+    }
+
+    private static final class MeteredInputStream extends FilterInputStream {
+
+        private S100CryptEvent event;
+        private long bytes;
+
+        MeteredInputStream(InputStream in, S100CryptEvent event) {
+            super(in);
+            this.event = event;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                end();
+            } else {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                end();
+            } else {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                end();
+            }
+        }
+
+        private void end() {
+            if (event != null) {
+                S100Metrics.cryptEnd(event, bytes);
+                event = null;
+            }
+        }
+
+    }
+
+    private static final class MeteredOutputStream extends FilterOutputStream {
+
+        private S100CryptEvent event;
+        private long bytes;
+
+        MeteredOutputStream(OutputStream out, S100CryptEvent event) {
+            super(out);
+            this.event = event;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // not one byte at a time like FilterOutputStream
+            out.write(b, off, len);
+            bytes += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (event != null) {
+                    S100Metrics.cryptEnd(event, bytes);
+                    event = null;
+                }
+            }
+        }
+
+    }
+
+}
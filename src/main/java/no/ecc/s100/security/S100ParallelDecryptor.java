@@ -0,0 +1,235 @@
+package no.ecc.s100.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+
+/**
+ * Decrypt large files on many cores. Unlike encryption, CBC decryption of a
+ * range of blocks only need the cipher text block in front of it, so the file
+ * is split into chunks that are decrypted independently and written to their
+ * position in the output file.
+ * <p>
+ * Files smaller than the threshold are decrypted on the calling thread using
+ * {@link S100Crypt#decrypt(Path, Path)}.
+ * <p>
+ * At most parallelism chunks are decrypted at the same time for each file, so
+ * the memory used is bounded by parallelism times the chunk size.
+ */
+public class S100ParallelDecryptor {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    public static final long DEFAULT_THRESHOLD = 16L * 1024 * 1024;
+
+    private static final int BLOCK_SIZE = S100Cbc.BLOCK_SIZE;
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int chunkSize;
+    private final long threshold;
+
+    /**
+     * Use a shared pool with one daemon thread per available processor, the
+     * default chunk size and the default threshold. The chunks do blocking
+     * file I/O, so they do not run in the {@link ForkJoinPool#commonPool()}.
+     */
+    public S100ParallelDecryptor() {
+        this(DefaultExecutor.EXECUTOR, DefaultExecutor.THREADS, DEFAULT_CHUNK_SIZE, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Same as {@link #S100ParallelDecryptor(ExecutorService, int, int, long)}
+     * with parallelism equal to the number of available processors.
+     */
+    public S100ParallelDecryptor(ExecutorService executor, int chunkSize, long threshold) {
+        this(executor, Runtime.getRuntime().availableProcessors(), chunkSize, threshold);
+    }
+
+    /**
+     * @param executor
+     *            run the chunks. Is not shut down by this class.
+     * @param parallelism
+     *            the max number of chunks submitted to the executor at the same
+     *            time for each file.
+     * @param chunkSize
+     *            the number of encrypted bytes in each chunk. Must be a multiple
+     *            of 16.
+     * @param threshold
+     *            encrypted files smaller than this are decrypted on the calling
+     *            thread.
+     */
+    public S100ParallelDecryptor(ExecutorService executor, int parallelism, int chunkSize, long threshold) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+        }
+        if (chunkSize < BLOCK_SIZE || chunkSize % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Decrypt the file in into the file out.
+     * 
+     * @return the number of decrypted bytes written.
+     */
+    public long decrypt(S100Crypt crypt, Path in, Path out) throws GeneralSecurityException, IOException {
+        long encryptedSize = Files.size(in);
+        if (encryptedSize < threshold || encryptedSize <= chunkSize) {
+            return crypt.decrypt(in, out);
+        }
+        if (encryptedSize % BLOCK_SIZE != 0) {
+            throw new IOException("Encrypted size not multiple of " + BLOCK_SIZE + " bytes: " + encryptedSize);
+        }
+        try (FileChannel inChannel = FileChannel.open(in, StandardOpenOption.READ);
+                FileChannel outChannel = FileChannel.open(out, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return decrypt(crypt, inChannel, encryptedSize, outChannel);
+        }
+    }
+
+    private long decrypt(S100Crypt crypt, FileChannel in, long encryptedSize, FileChannel out)
+            throws GeneralSecurityException, IOException {
+        long first = crypt.decryptSkip();
+        if (crypt.isPadded() && encryptedSize < first + BLOCK_SIZE) {
+            throw new IOException("Encrypted data too short: " + encryptedSize);
+        }
+        long end = crypt.isPadded() ? encryptedSize - paddingLength(crypt, in, encryptedSize) : encryptedSize;
+        long size = Math.max(0, end - first);
+
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Void>> chunks = new ArrayList<>();
+        try {
+            long next = 0;
+            int inFlight = 0;
+            while (next < encryptedSize || inFlight > 0) {
+                // keep at most parallelism chunks and their buffers in flight
+                while (next < encryptedSize && inFlight < parallelism) {
+                    long chunkStart = next;
+                    chunks.add(completion.submit(() -> {
+                        decryptChunk(crypt, in, chunkStart, Math.min(chunkSize, encryptedSize - chunkStart),
+                                first, end, out);
+                        return null;
+                    }));
+                    next += chunkSize;
+                    inFlight++;
+                }
+                completion.take().get();
+                inFlight--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<Void> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Decrypt the given chunk and write the part of it from first to end to
+     * the output at its position relative to first.
+     */
+    private static void decryptChunk(S100Crypt crypt, FileChannel in, long start, long length, long first,
+            long end, FileChannel out) throws GeneralSecurityException, IOException {
+        Cipher cipher = S100Cbc.newCipher();
+        byte[] iv = null;
+        if (start > 0) {
+            iv = new byte[BLOCK_SIZE];
+            readFully(in, ByteBuffer.wrap(iv), start - BLOCK_SIZE);
+        }
+        S100Cbc.initDecrypt(cipher, crypt.key, iv);
+
+        ByteBuffer src = in.map(FileChannel.MapMode.READ_ONLY, start, length);
+        ByteBuffer dst = ByteBuffer.allocate((int) length);
+        cipher.update(src, dst);
+        dst.flip();
+
+        long writeStart = Math.max(start, first);
+        long writeEnd = Math.min(start + length, end);
+        if (writeStart >= writeEnd) {
+            return;
+        }
+        dst.position((int) (writeStart - start));
+        dst.limit((int) (writeEnd - start));
+        long position = writeStart - first;
+        while (dst.hasRemaining()) {
+            position += out.write(dst, position);
+        }
+    }
+
+    /**
+     * The pool used by {@link S100ParallelDecryptor#S100ParallelDecryptor()},
+     * created on first use.
+     */
+    private static final class DefaultExecutor {
+
+        static final int THREADS = Runtime.getRuntime().availableProcessors();
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "s100-decrypt-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+    }
+
+    private static int paddingLength(S100Crypt crypt, FileChannel in, long encryptedSize)
+            throws GeneralSecurityException, IOException {
+        byte[] blocks = new byte[2 * BLOCK_SIZE];
+        readFully(in, ByteBuffer.wrap(blocks), encryptedSize - blocks.length);
+        Cipher cipher = S100Cbc.newCipher();
+        S100Cbc.initDecrypt(cipher, crypt.key, Arrays.copyOf(blocks, BLOCK_SIZE));
+        byte[] last = cipher.doFinal(blocks, BLOCK_SIZE, BLOCK_SIZE);
+        return S100Cbc.paddingLength(last, 0);
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = in.read(dst, position);
+            if (n == -1) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += n;
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+package no.ecc.s100.security;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import no.ecc.s100.S100ProductSpecification;
+import no.ecc.s100.utility.Hex;
+
+/**
+ * A compact binary permit database that is memory mapped and read directly
+ * from the mapped file, so that a permit service can start without parsing
+ * XML. Create it from {@link S100DataPermit}s or a {@link S100PermitFile} using
+ * {@link #write(Collection, Path)} and open it using {@link #open(Path)}.
+ * <p>
+ * The file start with a header of {@value #HEADER_SIZE} bytes, followed by a
+ * fixed width record of {@value #RECORD_SIZE} bytes for each permit sorted by
+ * file name, followed by the UTF-8 encoded file names. Each record hold the
+ * file name offset and length, the product specification number, the
+ * edition, the expiry as epoch day and the 16 byte encrypted data key. There
+ * is one permit per file name, the newest as defined by
+ * {@link S100PermitIndex}.
+ * <p>
+ * An opened database is immutable and thread safe.
+ */
+public final class S100PermitDatabase implements Closeable {
+
+    private static final byte[] MAGIC = "S100PDB1".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 32;
+    private static final int KEY_SIZE = S100Crypt.KEY_SIZE_ENCODED / 2;
+
+    private static final int NAME_OFFSET = 0;
+    private static final int NAME_LENGTH = 4;
+    private static final int PRODUCT = 6;
+    private static final int EDITION = 8;
+    private static final int EXPIRY = 12;
+    private static final int ENCRYPTED_KEY = 16;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int namesOffset;
+
+    private S100PermitDatabase(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("Not a S-100 permit database");
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(0, magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a S-100 permit database");
+        }
+        int version = buffer.getInt(8);
+        if (version != VERSION) {
+            throw new IOException("Unsupported S-100 permit database version " + version);
+        }
+        this.size = buffer.getInt(12);
+        this.namesOffset = buffer.getInt(16);
+        if (namesOffset != HEADER_SIZE + size * RECORD_SIZE || namesOffset > buffer.capacity()) {
+            throw new IOException("Corrupt S-100 permit database");
+        }
+    }
+
+    /**
+     * Memory map the given database file.
+     */
+    public static S100PermitDatabase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new S100PermitDatabase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static void write(S100PermitFile permitFile, Path file) throws IOException {
+        write(permitFile.getDataPermits(), file);
+    }
+
+    /**
+     * Write the given permits to the given file. The file is written to a
+     * temporary file first and then moved in place.
+     */
+    public static void write(Collection<S100DataPermit> dataPermits, Path file) throws IOException {
+        List<S100DataPermit> permits = new ArrayList<>(new S100PermitIndex(dataPermits).getDataPermits());
+        List<byte[]> names = new ArrayList<>(permits.size());
+        for (S100DataPermit permit : permits) {
+            names.add(permit.getFileName().getBytes(StandardCharsets.UTF_8));
+        }
+        Integer[] order = new Integer[permits.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(names.get(a), names.get(b)));
+
+        ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + permits.size() * RECORD_SIZE);
+        records.put(MAGIC);
+        records.putInt(VERSION);
+        records.putInt(permits.size());
+        records.putInt(HEADER_SIZE + permits.size() * RECORD_SIZE);
+        records.position(HEADER_SIZE);
+
+        // file names are unique, so each name is written once in record order
+        int nameOffset = 0;
+        for (int i : order) {
+            S100DataPermit permit = permits.get(i);
+            byte[] name = names.get(i);
+            if (name.length > Short.MAX_VALUE) {
+                throw new IOException("File name too long: " + permit.getFileName());
+            }
+            byte[] key;
+            try {
+                key = S100CompactDataPermit.encryptedKey(permit).array();
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            records.putInt(nameOffset);
+            records.putShort((short) name.length);
+            records.putShort((short) permit.getProductSpecification().getNumber());
+            records.putInt(permit.getEdtn());
+            records.putInt(S100CompactDataPermit.epochDay(permit));
+            records.put(key);
+            nameOffset += name.length;
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                out.write(records.array());
+                for (int i : order) {
+                    out.write(names.get(i));
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the index of the permit for the given file name, or -1 if there
+     *         is none.
+     */
+    public int indexOf(String fileName) {
+        byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compareName(mid, name);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the permit for the given file name, or null.
+     */
+    public S100DataPermit get(String fileName) {
+        int index = indexOf(fileName);
+        return index == -1 ? null : get(index);
+    }
+
+    /**
+     * @return the permit at the given index. Permits are ordered by file name.
+     */
+    public S100DataPermit get(int index) {
+        return new S100DataPermit(getFileName(index), getEdtn(index),
+                S100CompactDataPermit.date(getPermitEndEpochDay(index)),
+                Hex.toString(getEncryptedDataKey(index)), getProductSpecification(index));
+    }
+
+    public String getFileName(int index) {
+        int record = record(index);
+        byte[] name = new byte[buffer.getShort(record + NAME_LENGTH)];
+        buffer.get(namesOffset + buffer.getInt(record + NAME_OFFSET), name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    public int getEdtn(int index) {
+        return buffer.getInt(record(index) + EDITION);
+    }
+
+    public S100ProductSpecification getProductSpecification(int index) {
+        return S100ProductSpecification.valueOf(buffer.getShort(record(index) + PRODUCT));
+    }
+
+    /**
+     * @return the expiry as epoch day, or {@link Integer#MIN_VALUE} if none.
+     */
+    public int getPermitEndEpochDay(int index) {
+        return buffer.getInt(record(index) + EXPIRY);
+    }
+
+    public LocalDate getPermitEndLocalDate(int index) {
+        return S100CompactDataPermit.localDate(getPermitEndEpochDay(index));
+    }
+
+    public byte[] getEncryptedDataKey(int index) {
+        byte[] key = new byte[KEY_SIZE];
+        buffer.get(record(index) + ENCRYPTED_KEY, key);
+        return key;
+    }
+
+    /**
+     * @return a {@link List} view of all the permits ordered by file name. The
+     *         permits are created as they are accessed.
+     */
+    public List<S100DataPermit> getDataPermits() {
+        return new AbstractList<S100DataPermit>() {
+
+            @Override
+            public S100DataPermit get(int index) {
+                return S100PermitDatabase.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int record(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " size " + size);
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private int compareName(int index, byte[] name) {
+        int record = HEADER_SIZE + index * RECORD_SIZE;
+        int offset = namesOffset + buffer.getInt(record + NAME_OFFSET);
+        int length = buffer.getShort(record + NAME_LENGTH);
+        int n = Math.min(length, name.length);
+        for (int i = 0; i < n; i++) {
+            int c = Integer.compare(buffer.get(offset + i) & 0xFF, name[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(length, name.length);
+    }
+
+    /**
+     * Nothing to release as the file is closed after it is mapped. The mapping
+     * is released when this object is garbage collected.
+     */
+    @Override
+    public void close() {
+    }
+
+}
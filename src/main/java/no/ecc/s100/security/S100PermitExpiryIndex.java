@@ -0,0 +1,190 @@
+package no.ecc.s100.security;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An index of {@link S100DataPermit}s ordered by expiry date, so that expired
+ * and soon to expire permits can be found in time proportional to the number
+ * of permits found instead of by scanning all permits.
+ * <p>
+ * A permit is valid to and including its expiry date, and is expired as of the
+ * day after. Permits without an expiry date never expire and are not indexed
+ * by expiry. There is at most one permit for each file name, and the newest is
+ * kept as in {@link S100PermitIndex}.
+ * <p>
+ * Call {@link #advanceTo(LocalDate)}, for example once a day, to remove the
+ * permits that have lapsed and notify the registered {@link Listener}s.
+ * <p>
+ * This class is not thread safe.
+ */
+public class S100PermitExpiryIndex {
+
+    /**
+     * Notified by {@link S100PermitExpiryIndex#advanceTo(LocalDate)} for each
+     * permit that has lapsed.
+     */
+    public interface Listener {
+
+        void expired(S100DataPermit dataPermit, LocalDate asOf);
+
+    }
+
+    private final NavigableMap<Long, Map<String, S100DataPermit>> permitsByExpiry = new TreeMap<>();
+    private final Map<String, S100DataPermit> permitByFileName = new HashMap<>();
+    // the expiry day each permit was indexed by, as its Date is mutable
+    private final Map<String, Long> expiryDayByFileName = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public S100PermitExpiryIndex() {
+    }
+
+    public S100PermitExpiryIndex(Collection<S100DataPermit> dataPermits) {
+        addAll(dataPermits);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Add the given permit unless a newer permit for the same file name already
+     * exist, like {@link S100PermitIndex#add(S100DataPermit)}.
+     *
+     * @return true if the given permit was added.
+     */
+    public boolean add(S100DataPermit dataPermit) {
+        String fileName = dataPermit.getFileName();
+        S100DataPermit existing = permitByFileName.get(fileName);
+        if (existing != null && !S100PermitIndex.isNewer(dataPermit, existing)) {
+            return false;
+        }
+        remove(fileName);
+        permitByFileName.put(fileName, dataPermit);
+        LocalDate expiry = dataPermit.getPermitEndLocalDate();
+        if (expiry != null) {
+            Long day = Long.valueOf(expiry.toEpochDay());
+            expiryDayByFileName.put(fileName, day);
+            permitsByExpiry.computeIfAbsent(day, d -> new LinkedHashMap<>()).put(fileName, dataPermit);
+        }
+        return true;
+    }
+
+    public void addAll(Collection<S100DataPermit> dataPermits) {
+        for (S100DataPermit dataPermit : dataPermits) {
+            add(dataPermit);
+        }
+    }
+
+    /**
+     * Keep this index in sync with a {@link S100PermitIndex} after a merge.
+     */
+    public void apply(S100PermitIndex.MergeResult mergeResult) {
+        for (S100DataPermit dataPermit : mergeResult.getSuperseded()) {
+            remove(dataPermit.getFileName());
+        }
+        addAll(mergeResult.getAdded());
+        addAll(mergeResult.getUpdated());
+    }
+
+    /**
+     * @return the removed permit for the given file name, or null if there was
+     *         none.
+     */
+    public S100DataPermit remove(String fileName) {
+        S100DataPermit existing = permitByFileName.remove(fileName);
+        Long day = expiryDayByFileName.remove(fileName);
+        if (day != null) {
+            Map<String, S100DataPermit> sameDay = permitsByExpiry.get(day);
+            sameDay.remove(fileName);
+            if (sameDay.isEmpty()) {
+                permitsByExpiry.remove(day);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * @return the permits with an expiry date before the given date ordered by
+     *         expiry date.
+     */
+    public List<S100DataPermit> expiredAsOf(LocalDate date) {
+        return flatten(permitsByExpiry.headMap(Long.valueOf(date.toEpochDay()), false));
+    }
+
+    /**
+     * @return the permits that are still valid at the given date, but expire
+     *         within the given number of days, ordered by expiry date. With 0
+     *         days the permits expiring at the given date is returned.
+     */
+    public List<S100DataPermit> expiringWithin(LocalDate date, int days) {
+        if (days < 0) {
+            throw new IllegalArgumentException("Illegal number of days: " + days);
+        }
+        long from = date.toEpochDay();
+        return flatten(permitsByExpiry.subMap(Long.valueOf(from), true, Long.valueOf(from + days), true));
+    }
+
+    /**
+     * Remove all permits that are expired as of the given date and notify the
+     * listeners about each of them.
+     *
+     * @return the removed permits ordered by expiry date.
+     */
+    public List<S100DataPermit> advanceTo(LocalDate date) {
+        List<S100DataPermit> expired = new ArrayList<>();
+        Iterator<Map<String, S100DataPermit>> it = permitsByExpiry.headMap(Long.valueOf(date.toEpochDay()), false)
+                .values().iterator();
+        while (it.hasNext()) {
+            Map<String, S100DataPermit> sameDay = it.next();
+            it.remove();
+            for (S100DataPermit dataPermit : sameDay.values()) {
+                permitByFileName.remove(dataPermit.getFileName());
+                expiryDayByFileName.remove(dataPermit.getFileName());
+                expired.add(dataPermit);
+            }
+        }
+        for (S100DataPermit dataPermit : expired) {
+            for (Listener listener : listeners) {
+                listener.expired(dataPermit, date);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the earliest expiry date in this index, or null if empty.
+     */
+    public LocalDate getFirstExpiry() {
+        return permitsByExpiry.isEmpty() ? null : LocalDate.ofEpochDay(permitsByExpiry.firstKey().longValue());
+    }
+
+    /**
+     * @return the number of permits with an expiry date in this index.
+     */
+    public int size() {
+        return expiryDayByFileName.size();
+    }
+
+    private static List<S100DataPermit> flatten(NavigableMap<Long, Map<String, S100DataPermit>> byExpiry) {
+        List<S100DataPermit> result = new ArrayList<>();
+        for (Map<String, S100DataPermit> sameDay : byExpiry.values()) {
+            result.addAll(sameDay.values());
+        }
+        return result;
+    }
+
+}
@@ -2,24 +2,20 @@ package no.ecc.s100.security;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
 
 import com.google.common.collect.Multimap;
 import com.google.common.collect.TreeMultimap;
 
 import no.ecc.s100.S100ProductSpecification;
-import no.ecc.s100.utility.XMLUtils;
+import no.ecc.s100.metrics.S100Metrics;
+import no.ecc.s100.metrics.S100PermitFileEvent;
 
 public class S100PermitFile {
 
@@ -32,14 +28,14 @@ public class S100PermitFile {
 
     public static final String PERMIT_DOT_XML = "PERMIT.XML";
 
-    private static final String DATE_ELEMENT = "date";
-    private static final String USERPERMIT_ELEMENT = "userpermit";
-    private static final String DATASERVER_ELEMENT = "dataserver";
-    private static final String PRODUCT_ELEMENT = "product";
+    static final String DATE_ELEMENT = "date";
+    static final String USERPERMIT_ELEMENT = "userpermit";
+    static final String DATASERVER_ELEMENT = "dataserver";
+    static final String PRODUCT_ELEMENT = "product";
 
-    private static final String ID_ATTRIBUTE = "id";
+    static final String ID_ATTRIBUTE = "id";
 
-    private static final String HEADER_DATE_FORMAT = "yyyyMMdd hh:mm:ss";
+    static final String HEADER_DATE_FORMAT = "yyyyMMdd HH:mm:ss";
 
     public S100PermitFile(String dataserver, String hwId, String userPermitString) {
         this.dataserver = dataserver;
@@ -50,48 +46,20 @@ public class S100PermitFile {
 
     public S100PermitFile(S100ManufacturerLookup manufacturerLookup, InputStream in)
             throws IOException, XMLStreamException {
-        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-
-        Date date = null;
-        S100UserPermit userPermit = null;
-        String dataServer = null;
-        S100ProductSpecification currentProductSpecification = null;
-        DateFormat expiryDateFormat = new SimpleDateFormat(S100DataPermit.EXPIRY_DATE_FORMAT);
-
-        XMLStreamReader streamReader = null;
-        try {
-            streamReader = inputFactory.createXMLStreamReader(in);
-
-            while (streamReader.hasNext()) {
-                int e = streamReader.next();
-                if (e == XMLStreamConstants.START_ELEMENT) {
-                    String localName = streamReader.getLocalName();
-                    if (DATE_ELEMENT.equals(localName)) {
-                        try {
-                            date = new SimpleDateFormat(HEADER_DATE_FORMAT)
-                                    .parse(XMLUtils.readCharacters(streamReader));
-                        } catch (ParseException e1) {
-                            throw new IOException(e1);
-                        }
-                    } else if (USERPERMIT_ELEMENT.equals(localName)) {
-                        userPermit = new S100UserPermit(XMLUtils.readCharacters(streamReader));
-                    } else if (DATASERVER_ELEMENT.equals(localName)) {
-                        dataServer = XMLUtils.readCharacters(streamReader);
-                    } else if (PRODUCT_ELEMENT.equals(localName)) {
-                        currentProductSpecification = new S100ProductSpecification(
-                                streamReader.getAttributeValue(null, ID_ATTRIBUTE));
-                    } else if (currentProductSpecification != null && (S100DataPermit.PERMIT_ELEMENT.equals(localName)
-                            || S100DataPermit.DATASET_PERMIT_ELEMENT.equals(localName))) {
-                        permitsByProductSpecification.put(currentProductSpecification,
-                                new S100DataPermit(currentProductSpecification, expiryDateFormat, streamReader));
-                    }
-                }
+        S100PermitFileEvent event = S100Metrics.permitFileStart();
+        int dataPermits = 0;
+        S100UserPermit userPermit;
+        try (S100PermitFileReader reader = new S100PermitFileReader(in)) {
+            S100DataPermit dataPermit;
+            while ((dataPermit = reader.read()) != null) {
+                add(dataPermit);
+                dataPermits++;
             }
-
+            this.date = reader.getDate();
+            this.dataserver = reader.getDataserver();
+            userPermit = reader.getUserPermit();
         } finally {
-            if (streamReader != null) {
-                streamReader.close();
-            }
+            S100Metrics.permitFileEnd(event, dataPermits);
         }
 
         S100Manufacturer m = manufacturerLookup.manufacturerForMId(userPermit.getMId());
@@ -99,8 +67,6 @@ public class S100PermitFile {
             throw new IllegalStateException("Unknown manufacturer. M_ID=" + userPermit.getMId());
         }
 
-        this.date = date;
-        this.dataserver = dataServer;
         this.userPermitString = userPermit.getUserPermitString();
 
         try {
@@ -111,6 +77,18 @@ public class S100PermitFile {
 
     }
 
+    public Date getDate() {
+        return date;
+    }
+
+    public String getDataserver() {
+        return dataserver;
+    }
+
+    String getHwId() {
+        return hwId;
+    }
+
     public String getUserPermitString() {
         return userPermitString;
     }
@@ -140,4 +118,17 @@ public class S100PermitFile {
         return Collections.unmodifiableCollection(permitsByProductSpecification.values());
     }
 
+    /**
+     * Write this permit file as {@value #PERMIT_DOT_XML} to the given
+     * {@link OutputStream}. The stream is not closed.
+     */
+    public void write(OutputStream out) throws XMLStreamException {
+        S100PermitFileWriter writer = new S100PermitFileWriter(out);
+        writer.writeHeader(date, dataserver, userPermitString);
+        for (S100DataPermit dataPermit : permitsByProductSpecification.values()) {
+            writer.write(dataPermit);
+        }
+        writer.finish();
+    }
+
 }
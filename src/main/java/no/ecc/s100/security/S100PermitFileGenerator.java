@@ -0,0 +1,162 @@
+package no.ecc.s100.security;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import no.ecc.s100.S100ProductSpecification;
+import no.ecc.s100.utility.Hex;
+
+/**
+ * Create {@link S100PermitFile}s for many vessels, each with permits for many
+ * data sets, in one call. The data keys are decoded once, each HW_ID get a
+ * single {@link S100CryptSession}, and the vessels are handled in parallel.
+ */
+public class S100PermitFileGenerator {
+
+    private final String dataserver;
+    private final int parallelism;
+
+    public S100PermitFileGenerator(String dataserver) {
+        this(dataserver, Runtime.getRuntime().availableProcessors());
+    }
+
+    public S100PermitFileGenerator(String dataserver, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+        }
+        this.dataserver = dataserver;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return a {@link S100PermitFile} for each {@link Vessel} in the same order
+     *         as the given vessels, each with a permit for every given
+     *         {@link DataSet}.
+     */
+    public List<S100PermitFile> generate(Collection<Vessel> vessels, Collection<DataSet> dataSets)
+            throws GeneralSecurityException, InterruptedException {
+        DataSet[] sets = dataSets.toArray(new DataSet[dataSets.size()]);
+        byte[][] dataKeys = new byte[sets.length][];
+        for (int i = 0; i < sets.length; i++) {
+            dataKeys[i] = decodeKey(sets[i].getDataKey());
+        }
+
+        List<Callable<S100PermitFile>> tasks = new ArrayList<>(vessels.size());
+        for (Vessel vessel : vessels) {
+            tasks.add(() -> generate(vessel, sets, dataKeys));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, tasks.size())));
+        try {
+            List<S100PermitFile> permitFiles = new ArrayList<>(tasks.size());
+            for (Future<S100PermitFile> f : executor.invokeAll(tasks)) {
+                permitFiles.add(f.get());
+            }
+            return permitFiles;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private S100PermitFile generate(Vessel vessel, DataSet[] sets, byte[][] dataKeys)
+            throws GeneralSecurityException {
+        S100CryptSession session = new S100Crypt.EmptyIVNoPadding(vessel.getHwId()).newSession();
+        byte[] encrypted = new byte[S100Crypt.KEY_SIZE_ENCODED / 2];
+
+        List<S100DataPermit> permits = new ArrayList<>(sets.length);
+        for (int i = 0; i < sets.length; i++) {
+            DataSet set = sets[i];
+            session.encrypt(dataKeys[i], 0, dataKeys[i].length, encrypted, 0);
+            permits.add(new S100DataPermit(set.getFileName(), set.getEdtn(), set.getPermitEndDate(),
+                    Hex.toString(encrypted), set.getProductSpecification()));
+        }
+
+        S100PermitFile permitFile = new S100PermitFile(dataserver, vessel.getHwId(), vessel.getUserPermitString());
+        permitFile.addAll(permits);
+        return permitFile;
+    }
+
+    private static byte[] decodeKey(String dataKey) {
+        if (dataKey.length() != S100Crypt.KEY_SIZE_ENCODED) {
+            throw new IllegalArgumentException(
+                    "Expected encoded key length " + S100Crypt.KEY_SIZE_ENCODED + " not " + dataKey.length());
+        }
+        return Hex.fromString(dataKey);
+    }
+
+    public static final class Vessel {
+
+        private final String hwId;
+        private final String userPermitString;
+
+        public Vessel(String hwId, String userPermitString) {
+            this.hwId = hwId;
+            this.userPermitString = userPermitString;
+        }
+
+        public String getHwId() {
+            return hwId;
+        }
+
+        public String getUserPermitString() {
+            return userPermitString;
+        }
+
+    }
+
+    public static final class DataSet {
+
+        private final String fileName;
+        private final int edtn;
+        private final Date permitEndDate;
+        private final String dataKey;
+        private final S100ProductSpecification productSpecification;
+
+        public DataSet(String fileName, int edtn, Date permitEndDate, String dataKey,
+                S100ProductSpecification productSpecification) {
+            this.fileName = fileName;
+            this.edtn = edtn;
+            this.permitEndDate = permitEndDate;
+            this.dataKey = dataKey;
+            this.productSpecification = productSpecification;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public int getEdtn() {
+            return edtn;
+        }
+
+        public Date getPermitEndDate() {
+            return permitEndDate;
+        }
+
+        public String getDataKey() {
+            return dataKey;
+        }
+
+        public S100ProductSpecification getProductSpecification() {
+            return productSpecification;
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+package no.ecc.s100.security;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import no.ecc.s100.S100ProductSpecification;
+import no.ecc.s100.utility.XMLUtils;
+
+/**
+ * Pull based reader of {@value S100PermitFile#PERMIT_DOT_XML} that parse one
+ * {@link S100DataPermit} at a time. The header is read when the reader is
+ * created, so {@link #getDate()}, {@link #getDataserver()} and
+ * {@link #getUserPermit()} are available before the first permit.
+ * <p>
+ * Use {@link #read()}, the {@link Iterator} methods or {@link #stream()}. The
+ * {@link Iterator} and {@link Stream} methods wrap parse errors in
+ * {@link UncheckedIOException}.
+ */
+public class S100PermitFileReader implements Iterator<S100DataPermit>, Closeable {
+
+    private final XMLStreamReader streamReader;
+    private final DateFormat expiryDateFormat = new SimpleDateFormat(S100DataPermit.EXPIRY_DATE_FORMAT);
+
+    private Date date;
+    private String dataserver;
+    private S100UserPermit userPermit;
+
+    private S100ProductSpecification currentProductSpecification;
+    private S100DataPermit next;
+    private boolean ended;
+
+    /**
+     * @param in
+     *            the {@link InputStream} to read from. It is not closed by this
+     *            reader.
+     */
+    public S100PermitFileReader(InputStream in) throws IOException, XMLStreamException {
+        streamReader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+        try {
+            next = parseNext();
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            streamReader.close();
+            throw e;
+        }
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public String getDataserver() {
+        return dataserver;
+    }
+
+    public S100UserPermit getUserPermit() {
+        return userPermit;
+    }
+
+    /**
+     * @return the next {@link S100DataPermit} or null if there are no more
+     *         permits.
+     */
+    public S100DataPermit read() throws IOException, XMLStreamException {
+        S100DataPermit r = next;
+        if (r != null) {
+            next = parseNext();
+        }
+        return r;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public S100DataPermit next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (XMLStreamException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    /**
+     * @return a sequential {@link Stream} of the remaining permits. Closing the
+     *         {@link Stream} close this reader.
+     */
+    public Stream<S100DataPermit> stream() {
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private S100DataPermit parseNext() throws IOException, XMLStreamException {
+        while (!ended && streamReader.hasNext()) {
+            int e = streamReader.next();
+            if (e == XMLStreamConstants.START_ELEMENT) {
+                String localName = streamReader.getLocalName();
+                if (S100PermitFile.DATE_ELEMENT.equals(localName)) {
+                    try {
+                        date = new SimpleDateFormat(S100PermitFile.HEADER_DATE_FORMAT)
+                                .parse(XMLUtils.readCharacters(streamReader));
+                    } catch (ParseException e1) {
+                        throw new IOException(e1);
+                    }
+                } else if (S100PermitFile.USERPERMIT_ELEMENT.equals(localName)) {
+                    userPermit = new S100UserPermit(XMLUtils.readCharacters(streamReader));
+                } else if (S100PermitFile.DATASERVER_ELEMENT.equals(localName)) {
+                    dataserver = XMLUtils.readCharacters(streamReader);
+                } else if (S100PermitFile.PRODUCT_ELEMENT.equals(localName)) {
+                    currentProductSpecification = S100ProductSpecification.valueOf(
+                            streamReader.getAttributeValue(null, S100PermitFile.ID_ATTRIBUTE));
+                } else if (currentProductSpecification != null
+                        && (S100DataPermit.PERMIT_ELEMENT.equals(localName)
+                                || S100DataPermit.DATASET_PERMIT_ELEMENT.equals(localName))) {
+                    return new S100DataPermit(currentProductSpecification, expiryDateFormat, streamReader);
+                }
+            }
+        }
+        ended = true;
+        return null;
+    }
+
+    /**
+     * Close the underlying {@link XMLStreamReader}, but not the
+     * {@link InputStream}.
+     */
+    @Override
+    public void close() throws IOException {
+        ended = true;
+        next = null;
+        try {
+            streamReader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
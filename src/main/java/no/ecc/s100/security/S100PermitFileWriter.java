@@ -0,0 +1,119 @@
+package no.ecc.s100.security;
+
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import no.ecc.s100.S100ProductSpecification;
+
+/**
+ * Write {@value S100PermitFile#PERMIT_DOT_XML} as a stream using constant
+ * memory. Write the header first, then each {@link S100DataPermit} as it is
+ * produced and at last call {@link #finish()}.
+ * <p>
+ * A new product element is started each time the product specification
+ * changes, so the permits should be written grouped by product specification.
+ */
+public class S100PermitFileWriter {
+
+    static final String PERMIT_FILE_ELEMENT = "Permit";
+    static final String HEADER_ELEMENT = "header";
+    static final String PRODUCTS_ELEMENT = "products";
+
+    private static final String ENCODING = "UTF-8";
+
+    private final XMLStreamWriter writer;
+    private final DateFormat expiryDateFormat = new SimpleDateFormat(S100DataPermit.EXPIRY_DATE_FORMAT);
+
+    private boolean headerWritten;
+    private boolean finished;
+    private S100ProductSpecification currentProductSpecification;
+
+    /**
+     * @param out
+     *            the {@link OutputStream} to write to. It is not closed by this
+     *            writer.
+     */
+    public S100PermitFileWriter(OutputStream out) throws XMLStreamException {
+        writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, ENCODING);
+    }
+
+    public void writeHeader(Date date, String dataserver, String userPermitString) throws XMLStreamException {
+        if (headerWritten) {
+            throw new IllegalStateException("Header already written");
+        }
+        headerWritten = true;
+
+        writer.writeStartDocument(ENCODING, "1.0");
+        writer.writeStartElement(PERMIT_FILE_ELEMENT);
+        writer.writeStartElement(HEADER_ELEMENT);
+        writeElement(S100PermitFile.DATE_ELEMENT, new SimpleDateFormat(S100PermitFile.HEADER_DATE_FORMAT).format(date));
+        writeElement(S100PermitFile.DATASERVER_ELEMENT, dataserver);
+        writeElement(S100PermitFile.USERPERMIT_ELEMENT, userPermitString);
+        writer.writeEndElement();
+        writer.writeStartElement(PRODUCTS_ELEMENT);
+    }
+
+    public void write(S100DataPermit dataPermit) throws XMLStreamException {
+        if (!headerWritten) {
+            throw new IllegalStateException("Header must be written first");
+        }
+        if (finished) {
+            throw new IllegalStateException("Already finished");
+        }
+
+        S100ProductSpecification productSpecification = dataPermit.getProductSpecification();
+        if (!productSpecification.equals(currentProductSpecification)) {
+            if (currentProductSpecification != null) {
+                writer.writeEndElement();
+            }
+            writer.writeStartElement(S100PermitFile.PRODUCT_ELEMENT);
+            writer.writeAttribute(S100PermitFile.ID_ATTRIBUTE, productSpecification.getName());
+            currentProductSpecification = productSpecification;
+        }
+
+        writer.writeStartElement(S100DataPermit.DATASET_PERMIT_ELEMENT);
+        writeElement(S100DataPermit.FILENAME_ELEMENT, dataPermit.getFileName());
+        writeElement(S100DataPermit.EDITION_NUMBER_ELEMENT, Integer.toString(dataPermit.getEdtn()));
+        writeElement(S100DataPermit.EXPIRY_ELEMENT, expiryDateFormat.format(dataPermit.getPermitEndDate()));
+        writeElement(S100DataPermit.ENCRYPTED_KEY_ELEMENT, dataPermit.getEncryptedDataKey());
+        writer.writeEndElement();
+    }
+
+    /**
+     * End all open elements and flush. The underlying {@link OutputStream} is
+     * not closed.
+     */
+    public void finish() throws XMLStreamException {
+        if (!headerWritten) {
+            throw new IllegalStateException("Header must be written first");
+        }
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        if (currentProductSpecification != null) {
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+    }
+
+    private void writeElement(String localName, String value) throws XMLStreamException {
+        writer.writeStartElement(localName);
+        if (value != null) {
+            writer.writeCharacters(value);
+        }
+        writer.writeEndElement();
+    }
+
+}
@@ -0,0 +1,315 @@
+package no.ecc.s100.security;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamException;
+
+import no.ecc.s100.S100DataSetName;
+import no.ecc.s100.S100ProductSpecification;
+
+/**
+ * An index of {@link S100DataPermit}s with constant time lookup by file name
+ * and data set id, and ordered lookup by product specification and producer
+ * code.
+ * <p>
+ * There is at most one permit for each file name. When a permit is added for a
+ * file name that already has a permit, the newest edition is kept. For equal
+ * editions the permit with the latest expiry is kept.
+ * <p>
+ * This class is not thread safe, but can be read from many threads as long as
+ * it is not modified.
+ */
+public class S100PermitIndex {
+
+    private static final char KEY_SEPARATOR = '|';
+
+    private final Map<String, S100DataPermit> permitByFileName = new HashMap<>();
+    private final Map<String, List<S100DataPermit>> permitsByDataSetId = new HashMap<>();
+    private final NavigableMap<String, S100DataPermit> permitByOrderKey = new TreeMap<>();
+
+    public S100PermitIndex() {
+    }
+
+    public S100PermitIndex(Collection<S100DataPermit> dataPermits) {
+        addAll(dataPermits);
+    }
+
+    /**
+     * Add the given permit unless a newer permit for the same file name already
+     * exist.
+     * 
+     * @return true if the given permit was added.
+     */
+    public boolean add(S100DataPermit dataPermit) {
+        S100DataPermit existing = permitByFileName.get(dataPermit.getFileName());
+        if (existing != null) {
+            if (!isNewer(dataPermit, existing)) {
+                return false;
+            }
+            remove(existing);
+        }
+        put(dataPermit);
+        return true;
+    }
+
+    public void addAll(Collection<S100DataPermit> dataPermits) {
+        for (S100DataPermit dataPermit : dataPermits) {
+            add(dataPermit);
+        }
+    }
+
+    /**
+     * Apply a delta, like the permits from a newly received permit file, to
+     * this index. Time is proportional to the size of the delta, not the size
+     * of this index. Conflicts are resolved as for {@link #add(S100DataPermit)}.
+     *
+     * @return what was changed by the merge.
+     */
+    public MergeResult merge(Collection<S100DataPermit> delta) {
+        MergeResult result = new MergeResult();
+        for (S100DataPermit dataPermit : delta) {
+            merge(result, dataPermit);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #merge(Collection)} with all the remaining permits from the
+     * given reader, including permits for the same file name that
+     * {@link S100PermitFile} would have kept only one of. The reader is not
+     * closed.
+     *
+     * @return what was changed by the merge.
+     */
+    public MergeResult merge(S100PermitFileReader delta) throws IOException, XMLStreamException {
+        MergeResult result = new MergeResult();
+        S100DataPermit dataPermit;
+        while ((dataPermit = delta.read()) != null) {
+            merge(result, dataPermit);
+        }
+        return result;
+    }
+
+    private void merge(MergeResult result, S100DataPermit dataPermit) {
+        String fileName = dataPermit.getFileName();
+        S100DataPermit existing = permitByFileName.get(fileName);
+        if (existing == null) {
+            put(dataPermit);
+            result.added.put(fileName, dataPermit);
+        } else if (isNewer(dataPermit, existing)) {
+            remove(existing);
+            put(dataPermit);
+            // the same file name might be in the delta more than once
+            if (result.added.containsKey(fileName)) {
+                result.added.put(fileName, dataPermit);
+            } else {
+                result.updated.put(fileName, dataPermit);
+                result.superseded.putIfAbsent(fileName, existing);
+            }
+        } else {
+            result.ignored.add(dataPermit);
+        }
+    }
+
+    /**
+     * @return the removed permit for the given file name, or null if there was
+     *         none.
+     */
+    public S100DataPermit remove(String fileName) {
+        S100DataPermit existing = permitByFileName.get(fileName);
+        if (existing != null) {
+            remove(existing);
+        }
+        return existing;
+    }
+
+    void put(S100DataPermit dataPermit) {
+        permitByFileName.put(dataPermit.getFileName(), dataPermit);
+        permitsByDataSetId.computeIfAbsent(dataPermit.getDataSetId(), id -> new ArrayList<>(1)).add(dataPermit);
+        permitByOrderKey.put(orderKey(dataPermit), dataPermit);
+    }
+
+    void remove(S100DataPermit dataPermit) {
+        permitByFileName.remove(dataPermit.getFileName());
+        List<S100DataPermit> withSameDataSetId = permitsByDataSetId.get(dataPermit.getDataSetId());
+        if (withSameDataSetId != null) {
+            withSameDataSetId.remove(dataPermit);
+            if (withSameDataSetId.isEmpty()) {
+                permitsByDataSetId.remove(dataPermit.getDataSetId());
+            }
+        }
+        permitByOrderKey.remove(orderKey(dataPermit));
+    }
+
+    /**
+     * @return the permit for the given file name like "101NO00ABCDEF.000", or
+     *         null.
+     */
+    public S100DataPermit get(String fileName) {
+        return permitByFileName.get(fileName);
+    }
+
+    /**
+     * @return the permit for the given file name and edition, or null.
+     */
+    public S100DataPermit get(String fileName, int edtn) {
+        S100DataPermit dataPermit = permitByFileName.get(fileName);
+        return dataPermit != null && dataPermit.getEdtn() == edtn ? dataPermit : null;
+    }
+
+    /**
+     * @return the newest permit for the given data set id like "101NO00ABCDEF",
+     *         or null.
+     */
+    public S100DataPermit getByDataSetId(String dataSetId) {
+        List<S100DataPermit> dataPermits = permitsByDataSetId.get(dataSetId);
+        if (dataPermits == null) {
+            return null;
+        }
+        S100DataPermit newest = null;
+        for (S100DataPermit dataPermit : dataPermits) {
+            if (newest == null || isNewer(dataPermit, newest)) {
+                newest = dataPermit;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * @return all permits for the given product specification ordered by
+     *         producer code and file name.
+     */
+    public Collection<S100DataPermit> get(S100ProductSpecification productSpecification) {
+        return prefixRange(productSpecification.getNumber() + String.valueOf(KEY_SEPARATOR));
+    }
+
+    /**
+     * @return all permits for the given product specification and producer
+     *         code ordered by file name.
+     */
+    public Collection<S100DataPermit> get(S100ProductSpecification productSpecification, String producerCode) {
+        return prefixRange(productSpecification.getNumber() + String.valueOf(KEY_SEPARATOR) + producerCode
+                + KEY_SEPARATOR);
+    }
+
+    /**
+     * @return all permits for product specifications from and including
+     *         fromInclusive to and including toInclusive.
+     */
+    public Collection<S100DataPermit> get(S100ProductSpecification fromInclusive,
+            S100ProductSpecification toInclusive) {
+        String from = fromInclusive.getNumber() + String.valueOf(KEY_SEPARATOR);
+        String to = toInclusive.getNumber() + String.valueOf(KEY_SEPARATOR) + Character.MAX_VALUE;
+        return Collections.unmodifiableCollection(permitByOrderKey.subMap(from, true, to, true).values());
+    }
+
+    /**
+     * @return all permits ordered by product specification, producer code and
+     *         file name.
+     */
+    public Collection<S100DataPermit> getDataPermits() {
+        return Collections.unmodifiableCollection(permitByOrderKey.values());
+    }
+
+    public int size() {
+        return permitByFileName.size();
+    }
+
+    /**
+     * What was changed by {@link S100PermitIndex#merge(Collection)}.
+     */
+    public static final class MergeResult {
+
+        private final Map<String, S100DataPermit> added = new LinkedHashMap<>();
+        private final Map<String, S100DataPermit> updated = new LinkedHashMap<>();
+        private final Map<String, S100DataPermit> superseded = new LinkedHashMap<>();
+        private final List<S100DataPermit> ignored = new ArrayList<>();
+
+        private MergeResult() {
+        }
+
+        /**
+         * @return permits for file names that had no permit before the merge.
+         */
+        public Collection<S100DataPermit> getAdded() {
+            return Collections.unmodifiableCollection(added.values());
+        }
+
+        /**
+         * @return permits that replaced an existing permit.
+         */
+        public Collection<S100DataPermit> getUpdated() {
+            return Collections.unmodifiableCollection(updated.values());
+        }
+
+        /**
+         * @return the permits that was in the index before the merge and has
+         *         been replaced by one of the {@link #getUpdated()} permits.
+         */
+        public Collection<S100DataPermit> getSuperseded() {
+            return Collections.unmodifiableCollection(superseded.values());
+        }
+
+        /**
+         * @return permits from the delta that was not newer than the permit
+         *         already in the index.
+         */
+        public List<S100DataPermit> getIgnored() {
+            return Collections.unmodifiableList(ignored);
+        }
+
+        /**
+         * @return true if the merge did change the index.
+         */
+        public boolean isChanged() {
+            return !added.isEmpty() || !updated.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "MergeResult[added=" + added.size() + ", updated=" + updated.size() + ", ignored="
+                    + ignored.size() + "]";
+        }
+
+    }
+
+    private Collection<S100DataPermit> prefixRange(String prefix) {
+        return Collections.unmodifiableCollection(
+                permitByOrderKey.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values());
+    }
+
+    private static String orderKey(S100DataPermit dataPermit) {
+        String producerCode = S100DataSetName.producerCode(dataPermit.getFileName());
+        StringBuilder key = new StringBuilder(32);
+        key.append(dataPermit.getProductSpecification().getNumber());
+        key.append(KEY_SEPARATOR);
+        key.append(producerCode == null ? "" : producerCode);
+        key.append(KEY_SEPARATOR);
+        key.append(dataPermit.getFileName());
+        return key.toString();
+    }
+
+    /**
+     * @return true if a has a higher edition than b, or the same edition and a
+     *         later expiry.
+     */
+    static boolean isNewer(S100DataPermit a, S100DataPermit b) {
+        if (a.getEdtn() != b.getEdtn()) {
+            return a.getEdtn() > b.getEdtn();
+        }
+        if (a.getPermitEndDate() == null || b.getPermitEndDate() == null) {
+            return b.getPermitEndDate() == null && a.getPermitEndDate() != null;
+        }
+        return a.getPermitEndDate().after(b.getPermitEndDate());
+    }
+
+}
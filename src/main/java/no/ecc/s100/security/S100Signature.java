@@ -1,18 +1,36 @@
 package no.ecc.s100.security;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.util.Base64;
 
+import no.ecc.s100.metrics.S100Metrics;
+import no.ecc.s100.metrics.S100SignatureEvent;
+
 public class S100Signature {
 
+    static final String ALGORITHM = "SHA256withDSA";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+
     private final Signature signature;
     private byte[] signatureBytes;
+    private boolean verifying;
+    // started by the first update after initVerify
+    private S100SignatureEvent event;
 
     public S100Signature() throws GeneralSecurityException {
-        signature = Signature.getInstance("SHA256withDSA");
+        this(S100CryptoProviders.newSignature());
     }
 
     public S100Signature(byte[] signatureBase64Bytes) throws GeneralSecurityException {
@@ -25,21 +43,102 @@ public class S100Signature {
         this.signatureBytes = Base64.getDecoder().decode(signatureBase64);
     }
 
+    /**
+     * Use an existing {@link Signature} instance, so that it can be reused.
+     */
+    S100Signature(Signature signature) {
+        this.signature = signature;
+    }
+
+    /**
+     * Use an existing {@link Signature} instance already initialized for
+     * verification.
+     */
+    S100Signature(Signature signature, String signatureBase64) {
+        this(signature);
+        this.signatureBytes = Base64.getDecoder().decode(signatureBase64);
+        this.verifying = true;
+    }
+
     public void initVerify(PublicKey publicKey) throws GeneralSecurityException {
         signature.initVerify(publicKey);
+        verifying = true;
+        event = null;
     }
 
     public void initSign(PrivateKey privateKey) throws GeneralSecurityException {
         signature.initSign(privateKey);
+        verifying = false;
+        event = null;
     }
 
     public void update(byte[] data) throws GeneralSecurityException {
+        updateStart();
         signature.update(data);
     }
 
     public void update(byte[] data, int off, int len) throws GeneralSecurityException {
+        updateStart();
         signature.update(data, off, len);
     }
+
+    public void update(ByteBuffer data) throws GeneralSecurityException {
+        updateStart();
+        signature.update(data);
+    }
+
+    private void updateStart() {
+        if (verifying && event == null) {
+            event = S100Metrics.signatureStart();
+        }
+    }
+
+    /**
+     * Update with everything from the given {@link InputStream}. The stream is
+     * not closed.
+     */
+    public void update(InputStream in) throws GeneralSecurityException, IOException {
+        updateStart();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            signature.update(buffer, 0, n);
+        }
+    }
+
+    /**
+     * Update with everything from the given {@link ReadableByteChannel}. The
+     * channel is not closed.
+     */
+    public void update(ReadableByteChannel in) throws GeneralSecurityException, IOException {
+        updateStart();
+        if (in instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) in;
+            long size = fileChannel.size();
+            for (long position = fileChannel.position(); position < size; position += MAP_SIZE) {
+                signature.update(fileChannel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_SIZE, size - position)));
+            }
+            fileChannel.position(size);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            signature.update(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Update with the content of the given file. The file is memory mapped.
+     */
+    public void update(Path file) throws GeneralSecurityException, IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            update(in);
+        }
+    }
     
     public byte[] sign() throws GeneralSecurityException {
         signatureBytes = signature.sign();
@@ -47,7 +146,16 @@ public class S100Signature {
     }
 
     public boolean verify() throws GeneralSecurityException {
-        return signature.verify(signatureBytes);
+        S100SignatureEvent event = this.event != null ? this.event : S100Metrics.signatureStart();
+        // the Signature is reset by verify
+        this.event = null;
+        boolean valid = false;
+        try {
+            valid = signature.verify(signatureBytes);
+            return valid;
+        } finally {
+            S100Metrics.signatureEnd(event, valid);
+        }
     }
 
     @Override
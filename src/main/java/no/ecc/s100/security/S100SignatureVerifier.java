@@ -0,0 +1,174 @@
+package no.ecc.s100.security;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verify the {@value S100Signature#ALGORITHM} signatures of many files, like
+ * all the files of an exchange set, on a bounded pool of worker threads. Each
+ * file is streamed through the signature in large memory mapped blocks.
+ */
+public class S100SignatureVerifier {
+
+    private final PublicKey publicKey;
+    private final int parallelism;
+
+    public S100SignatureVerifier(PublicKey publicKey) {
+        this(publicKey, Runtime.getRuntime().availableProcessors());
+    }
+
+    public S100SignatureVerifier(PublicKey publicKey, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+        }
+        this.publicKey = publicKey;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Verify a single file.
+     */
+    public boolean verify(Path file, String signatureBase64) throws GeneralSecurityException, IOException {
+        S100Signature signature = new S100Signature(signatureBase64);
+        signature.initVerify(publicKey);
+        signature.update(file);
+        return signature.verify();
+    }
+
+    /**
+     * Verify all the given files in parallel. A failure for a single file is
+     * reported in its {@link Result}, and a file that could not be verified at
+     * all, like when no {@link Signature} could be created, also get a failed
+     * {@link Result}.
+     * 
+     * @param signatureByFile
+     *            the base64 encoded signature for each file.
+     * @return a {@link Result} for each file in the iteration order of the given
+     *         {@link Map}.
+     */
+    public List<Result> verify(Map<Path, String> signatureByFile) throws InterruptedException {
+        if (signatureByFile.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Map.Entry<Path, String>> queue = new ArrayList<>(signatureByFile.entrySet());
+        Result[] results = new Result[queue.size()];
+        AtomicInteger next = new AtomicInteger();
+
+        int workerCount = Math.min(parallelism, queue.size());
+        List<Callable<Void>> workers = new ArrayList<>(workerCount);
+        List<Throwable> workerFailures = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(() -> {
+                Signature signature;
+                try {
+                    signature = S100CryptoProviders.newSignature();
+                } catch (GeneralSecurityException | RuntimeException e) {
+                    // leave the files to the other workers
+                    workerFailures.add(e);
+                    return null;
+                }
+                int index;
+                while ((index = next.getAndIncrement()) < results.length) {
+                    Map.Entry<Path, String> e = queue.get(index);
+                    results[index] = verify(signature, e.getKey(), e.getValue());
+                }
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (Future<Void> f : executor.invokeAll(workers)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    workerFailures.add(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            // keep the results of the files that were verified
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    IllegalStateException failure = new IllegalStateException("Not verified");
+                    workerFailures.forEach(failure::addSuppressed);
+                    results[i] = new Result(queue.get(i).getKey(), false, 0, failure);
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    private Result verify(Signature reused, Path file, String signatureBase64) {
+        long start = System.nanoTime();
+        try {
+            S100Signature signature = new S100Signature(reused, signatureBase64);
+            signature.initVerify(publicKey);
+            signature.update(file);
+            return new Result(file, signature.verify(), System.nanoTime() - start, null);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            return new Result(file, false, System.nanoTime() - start, e);
+        }
+    }
+
+    public static final class Result {
+
+        private final Path file;
+        private final boolean valid;
+        private final long nanos;
+        private final Exception failure;
+
+        private Result(Path file, boolean valid, long nanos, Exception failure) {
+            this.file = file;
+            this.valid = valid;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return true if the signature was verified successfully.
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the reason the file could not be verified, or null if the file
+         *         was read and the signature checked.
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return file + (valid ? " VALID" : failure == null ? " INVALID" : " FAILED " + failure);
+        }
+
+    }
+
+}
@@ -7,39 +7,66 @@ import no.ecc.s100.utility.Hex;
 
 public class S100UserPermit {
 
+    private static final int HW_ID_ENCRYPTED_LENGTH = 32;
+    private static final int CRC_LENGTH = 8;
+    private static final int M_ID_LENGTH = 6;
+    private static final int USER_PERMIT_LENGTH = HW_ID_ENCRYPTED_LENGTH + CRC_LENGTH + M_ID_LENGTH;
+
     private final String hwIdEncrypted;
     private final String mId;
+    private final String encryptedHwIdCrc;
 
     public S100UserPermit(String hwIdEncrypted, String mId) {
-        if (hwIdEncrypted == null || hwIdEncrypted.length() != 32) {
+        if (hwIdEncrypted == null || hwIdEncrypted.length() != HW_ID_ENCRYPTED_LENGTH) {
             throw new IllegalArgumentException("S-100 Encrypted HW_ID must be 32 characters long");
         }
-        if (mId == null || mId.length() != 6) {
+        if (mId == null || mId.length() != M_ID_LENGTH) {
             throw new IllegalArgumentException("S-100 Encrypted M_ID must be 6 characters long");
         }
 
         this.hwIdEncrypted = hwIdEncrypted;
         this.mId = mId;
+        this.encryptedHwIdCrc = CRC32Helper.crc32String(hwIdEncrypted.getBytes());
     }
 
     public S100UserPermit(String userPermit) throws IllegalArgumentException {
-        if (userPermit == null || userPermit.length() != 46) {
+        if (userPermit == null || userPermit.length() != USER_PERMIT_LENGTH) {
             throw new IllegalArgumentException("S-100 User Permit must be 46 characters long");
         }
-        hwIdEncrypted = userPermit.substring(0, 32);
-        String userPermitCrc = userPermit.substring(32, 40);
-        mId = userPermit.substring(40);
-
-        String calculatedCrc = CRC32Helper.crc32String(hwIdEncrypted.getBytes());
-        if (!calculatedCrc.equals(userPermitCrc)) {
+        if (!isCrcValid(userPermit)) {
             throw new IllegalArgumentException("S-100 User Permit CRC fail");
         }
+        hwIdEncrypted = userPermit.substring(0, HW_ID_ENCRYPTED_LENGTH);
+        encryptedHwIdCrc = userPermit.substring(HW_ID_ENCRYPTED_LENGTH, HW_ID_ENCRYPTED_LENGTH + CRC_LENGTH);
+        mId = userPermit.substring(HW_ID_ENCRYPTED_LENGTH + CRC_LENGTH);
+    }
+
+    /**
+     * Check the length and CRC of the given user permit without creating any
+     * objects.
+     * 
+     * @return true if {@link #S100UserPermit(String)} would accept the given
+     *         user permit.
+     */
+    public static boolean isValid(CharSequence userPermit) {
+        return userPermit != null && userPermit.length() == USER_PERMIT_LENGTH && isCrcValid(userPermit);
+    }
+
+    private static boolean isCrcValid(CharSequence userPermit) {
+        for (int i = 0; i < HW_ID_ENCRYPTED_LENGTH; i++) {
+            if (userPermit.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        int crc = CRC32Helper.crc32(userPermit, 0, HW_ID_ENCRYPTED_LENGTH);
+        return CRC32Helper.isCrc32String(crc, userPermit, HW_ID_ENCRYPTED_LENGTH,
+                HW_ID_ENCRYPTED_LENGTH + CRC_LENGTH);
     }
 
     public String getUserPermitString() {
-        StringBuilder sb = new StringBuilder(46);
+        StringBuilder sb = new StringBuilder(USER_PERMIT_LENGTH);
         sb.append(hwIdEncrypted);
-        sb.append(getEncryptedHwIdCRC());
+        sb.append(encryptedHwIdCrc);
         sb.append(mId);
         return sb.toString();
     }
@@ -53,7 +80,7 @@ public class S100UserPermit {
     }
 
     public String getEncryptedHwIdCRC() {
-        return CRC32Helper.crc32String(hwIdEncrypted.getBytes());
+        return encryptedHwIdCrc;
     }
     
     public static String createRandomHwId() {
@@ -0,0 +1,254 @@
+package no.ecc.s100.security;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import no.ecc.s100.metrics.S100Metrics;
+import no.ecc.s100.utility.Hex;
+
+/**
+ * Validate or create many {@link S100UserPermit}s on a bounded pool of worker
+ * threads. The CRC is checked without creating any objects, and each worker
+ * keep one {@link S100CryptSession}, and so one key schedule, per
+ * manufacturer.
+ */
+public class S100UserPermitBatch {
+
+    private static final int CHUNK_SIZE = 256;
+    private static final int HW_ID_LENGTH = 16;
+
+    private final S100ManufacturerLookup manufacturerLookup;
+    private final int parallelism;
+
+    public S100UserPermitBatch(S100ManufacturerLookup manufacturerLookup) {
+        this(manufacturerLookup, Runtime.getRuntime().availableProcessors());
+    }
+
+    public S100UserPermitBatch(S100ManufacturerLookup manufacturerLookup, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+        }
+        this.manufacturerLookup = manufacturerLookup;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Validate the given user permits: check the length and CRC, look up the
+     * manufacturer and decrypt the HW_ID.
+     * 
+     * @return a {@link Validation} for each user permit in the same order as
+     *         the given user permits.
+     */
+    public List<Validation> validate(List<String> userPermits) throws InterruptedException {
+        Validation[] results = new Validation[userPermits.size()];
+        try {
+            run(results.length, worker -> i -> results[i] = worker.validate(userPermits.get(i)));
+        } catch (GeneralSecurityException e) {
+            // validate report failures in the result
+            throw new IllegalStateException(e);
+        }
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Create user permits for the given hex encoded HW_IDs by encrypting them
+     * with the key of the given manufacturer.
+     * 
+     * @return a user permit for each HW_ID in the same order as the given
+     *         HW_IDs.
+     */
+    public List<S100UserPermit> create(S100Manufacturer manufacturer, List<String> hwIds)
+            throws GeneralSecurityException, InterruptedException {
+        for (String hwId : hwIds) {
+            if (hwId == null || hwId.length() != 2 * HW_ID_LENGTH) {
+                throw new IllegalArgumentException("S-100 HW_ID must be 32 characters long: " + hwId);
+            }
+        }
+        S100UserPermit[] results = new S100UserPermit[hwIds.size()];
+        run(results.length, worker -> i -> results[i] = worker.create(manufacturer, hwIds.get(i)));
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    private void run(int size, WorkerTask task) throws GeneralSecurityException, InterruptedException {
+        if (size == 0) {
+            return;
+        }
+        AtomicInteger next = new AtomicInteger();
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int workerCount = Math.min(parallelism, chunks);
+        List<Callable<Void>> workers = new ArrayList<>(workerCount);
+        for (int w = 0; w < workerCount; w++) {
+            workers.add(() -> {
+                Item item = task.item(new Worker());
+                int start;
+                while ((start = next.getAndAdd(CHUNK_SIZE)) < size) {
+                    int end = Math.min(start + CHUNK_SIZE, size);
+                    for (int i = start; i < end; i++) {
+                        item.apply(i);
+                    }
+                }
+                return null;
+            });
+        }
+
+        if (workerCount == 1) {
+            try {
+                workers.get(0).call();
+            } catch (GeneralSecurityException | InterruptedException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (Future<Void> f : executor.invokeAll(workers)) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface WorkerTask {
+        Item item(Worker worker);
+    }
+
+    private interface Item {
+        void apply(int index) throws GeneralSecurityException;
+    }
+
+    private final class Worker {
+
+        private final Map<String, S100CryptSession> sessionByMId = new HashMap<>();
+        private final byte[] in = new byte[HW_ID_LENGTH];
+        private final byte[] out = new byte[HW_ID_LENGTH];
+
+        Validation validate(String userPermitString) {
+            if (!S100UserPermit.isValid(userPermitString)) {
+                return new Validation(userPermitString, null, null, "Illegal length or CRC");
+            }
+            S100UserPermit userPermit = new S100UserPermit(userPermitString);
+            try {
+                S100CryptSession session = session(userPermit.getMId());
+                if (session == null) {
+                    return new Validation(userPermitString, userPermit, null,
+                            "Unknown manufacturer. M_ID=" + userPermit.getMId());
+                }
+                decode(userPermit.getHwIdEncrypted());
+                session.decrypt(in, 0, HW_ID_LENGTH, out, 0);
+                S100Metrics.hwIdDecrypted(userPermit.getMId());
+                return new Validation(userPermitString, userPermit, Hex.toString(out), null);
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                return new Validation(userPermitString, userPermit, null, e.toString());
+            }
+        }
+
+        S100UserPermit create(S100Manufacturer manufacturer, String hwId) throws GeneralSecurityException {
+            S100CryptSession session = sessionByMId.get(manufacturer.getId());
+            if (session == null) {
+                session = manufacturer.newSession();
+                sessionByMId.put(manufacturer.getId(), session);
+            }
+            decode(hwId);
+            session.encrypt(in, 0, HW_ID_LENGTH, out, 0);
+            return new S100UserPermit(Hex.toString(out), manufacturer.getId());
+        }
+
+        /**
+         * @return the session for the given M_ID, or null if the manufacturer
+         *         is unknown.
+         */
+        private S100CryptSession session(String mId) throws GeneralSecurityException {
+            S100CryptSession session = sessionByMId.get(mId);
+            if (session == null && !sessionByMId.containsKey(mId)) {
+                S100Manufacturer manufacturer = manufacturerLookup.manufacturerForMId(mId);
+                session = manufacturer == null ? null : manufacturer.newSession();
+                sessionByMId.put(mId, session);
+            }
+            return session;
+        }
+
+        private void decode(String hex) {
+            for (int i = 0; i < HW_ID_LENGTH; i++) {
+                int high = Character.digit(hex.charAt(2 * i), 16);
+                int low = Character.digit(hex.charAt(2 * i + 1), 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Illegal hex: " + hex);
+                }
+                in[i] = (byte) ((high << 4) | low);
+            }
+        }
+
+    }
+
+    public static final class Validation {
+
+        private final String userPermitString;
+        private final S100UserPermit userPermit;
+        private final String hwId;
+        private final String failure;
+
+        private Validation(String userPermitString, S100UserPermit userPermit, String hwId, String failure) {
+            this.userPermitString = userPermitString;
+            this.userPermit = userPermit;
+            this.hwId = hwId;
+            this.failure = failure;
+        }
+
+        public String getUserPermitString() {
+            return userPermitString;
+        }
+
+        /**
+         * @return the parsed user permit, or null if the length or CRC is not
+         *         valid.
+         */
+        public S100UserPermit getUserPermit() {
+            return userPermit;
+        }
+
+        /**
+         * @return the decrypted HW_ID, or null if not valid.
+         */
+        public String getHwId() {
+            return hwId;
+        }
+
+        public boolean isValid() {
+            return failure == null;
+        }
+
+        public String getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return userPermitString + (isValid() ? " OK" : " FAILED " + failure);
+        }
+
+    }
+
+}
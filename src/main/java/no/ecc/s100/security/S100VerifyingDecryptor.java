@@ -0,0 +1,192 @@
+package no.ecc.s100.security;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decrypt a signed and encrypted data set while checking its signature in the
+ * same pass, so the encrypted data is read only once. The signature is
+ * calculated over the encrypted data and verified when the end of the
+ * encrypted data is reached.
+ */
+public class S100VerifyingDecryptor {
+
+    private final S100Crypt crypt;
+    private final PublicKey publicKey;
+
+    public S100VerifyingDecryptor(S100Crypt crypt, PublicKey publicKey) {
+        this.crypt = crypt;
+        this.publicKey = publicKey;
+    }
+
+    /**
+     * Decrypt the given encrypted {@link InputStream}. The returned stream
+     * throws an {@link IOException} caused by a {@link SignatureException} at
+     * the end of the data if the signature is not valid. Nothing read from the
+     * returned stream can be trusted before the end of the stream has been
+     * reached without an exception.
+     */
+    public InputStream decrypt(InputStream encrypted, String signatureBase64)
+            throws GeneralSecurityException, IOException {
+        S100Signature signature = new S100Signature(signatureBase64);
+        signature.initVerify(publicKey);
+        InputStream decrypted = crypt.decrypt(new SignatureUpdatingInputStream(encrypted, signature));
+        return new VerifyAtEndInputStream(decrypted, signature);
+    }
+
+    /**
+     * Decrypt the encrypted file into the target file. The encrypted file is
+     * memory mapped as in {@link S100Crypt#decrypt(Path, Path)}. The result is
+     * written to a temporary file with the default permissions for new files
+     * that is only moved to the target file if the signature is valid.
+     * 
+     * @return the number of decrypted bytes.
+     * @throws SignatureException
+     *             if the signature is not valid. The target file is then not
+     *             created or changed.
+     */
+    public long decrypt(Path encrypted, String signatureBase64, Path target)
+            throws GeneralSecurityException, IOException {
+        S100Signature signature = new S100Signature(signatureBase64);
+        signature.initVerify(publicKey);
+
+        Path tmp = createTempFile(target);
+        try {
+            long n = crypt.decrypt(encrypted, tmp, signature);
+            if (!signature.verify()) {
+                throw new SignatureException("Signature verification failed for " + encrypted);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return n;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Create an empty file next to the given target. Unlike
+     * {@link Files#createTempFile(Path, String, String)}, the file get the
+     * default permissions, which the target get when moved.
+     */
+    private static Path createTempFile(Path target) throws IOException {
+        Path targetDirectory = target.toAbsolutePath().getParent();
+        while (true) {
+            Path tmp = targetDirectory.resolve(target.getFileName() + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE) + ".tmp");
+            try {
+                return Files.createFile(tmp);
+            } catch (FileAlreadyExistsException e) {
+                // try another name
+            }
+        }
+    }
+
+    private static final class SignatureUpdatingInputStream extends FilterInputStream {
+
+        private final S100Signature signature;
+
+        SignatureUpdatingInputStream(InputStream in, S100Signature signature) {
+            super(in);
+            this.signature = signature;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                update(new byte[] { (byte) b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                update(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes must also be part of the signature
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int r = read(buffer, 0, buffer.length);
+            return Math.max(r, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void update(byte[] b, int off, int len) throws IOException {
+            try {
+                signature.update(b, off, len);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+    }
+
+    private static final class VerifyAtEndInputStream extends FilterInputStream {
+
+        private final S100Signature signature;
+        private boolean verified;
+
+        VerifyAtEndInputStream(InputStream in, S100Signature signature) {
+            super(in);
+            this.signature = signature;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                verify();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n == -1) {
+                verify();
+            }
+            return n;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void verify() throws IOException {
+            if (verified) {
+                return;
+            }
+            try {
+                if (!signature.verify()) {
+                    throw new IOException(new SignatureException("Signature verification failed"));
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+            verified = true;
+        }
+
+    }
+
+}
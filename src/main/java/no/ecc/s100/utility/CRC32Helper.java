@@ -7,15 +7,27 @@ import java.util.zip.CRC32;
  */
 public class CRC32Helper {
 
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int c = n;
+            for (int k = 0; k < 8; k++) {
+                c = (c & 1) != 0 ? 0xEDB88320 ^ (c >>> 1) : c >>> 1;
+            }
+            TABLE[n] = c;
+        }
+    }
+
     /**
      * Create a CRC checksum of the given data block as a hex string.
      * 
      * @param data
      *            the byte[] to create a checksum on
-     * @return
+     * @return 8 upper case hex digits, with leading zeros.
      */
     public static String crc32String(byte[] data) {
-        return Integer.toHexString((int) crc32(data)).toUpperCase();
+        return String.format("%08X", Long.valueOf(crc32(data)));
     }
 
     public static long crc32(byte[] data) {
@@ -24,4 +36,37 @@ public class CRC32Helper {
         return crc.getValue();
     }
 
-}
\ No newline at end of file
+    /**
+     * Same as {@link #crc32(byte[])} of the ASCII bytes of the given characters
+     * from start to end, but without creating any objects. All characters must
+     * be ASCII, like hex digits.
+     */
+    public static int crc32(CharSequence s, int start, int end) {
+        int c = 0xFFFFFFFF;
+        for (int i = start; i < end; i++) {
+            c = TABLE[(c ^ s.charAt(i)) & 0xFF] ^ (c >>> 8);
+        }
+        return ~c;
+    }
+
+    /**
+     * @return true if the characters from start to end is the same as
+     *         {@link #crc32String(byte[])} give for the given CRC.
+     */
+    public static boolean isCrc32String(int crc, CharSequence s, int start, int end) {
+        // upper case hex with leading zeros
+        if (end - start != 8) {
+            return false;
+        }
+        for (int i = end - 1; i >= start; i--) {
+            int d = crc & 0xF;
+            char expected = (char) (d < 10 ? '0' + d : 'A' + d - 10);
+            if (s.charAt(i) != expected) {
+                return false;
+            }
+            crc >>>= 4;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,90 @@
+package no.ecc.s100;
+
+import junit.framework.TestCase;
+import no.ecc.s100.utility.FileUtils;
+
+public class S100FileNameTest extends TestCase {
+
+    private static final String[] FILE_NAMES = { null, "", "abc", "1234", "101NO", "101NO00ABCDEF.000",
+            "S101/DATASET_FILES/101NO00ABCDEF.000", "C:\\\\S101\\\\101NO12ABCDEF.001", "101GB000ABC", "1010000.000",
+            "S102NOABCDEF.h5", "S102no_ABCDEF.h5", "S-101", "ABCDEFGHIJ.000", "ABCDEFGHIJ", ".ABCDEFGHIJ",
+            "AB.CDEFGHIJK", "x/101n", "101AB.CD.EF", "007AAAA.000" };
+
+    public void testSameAsRegularExpressions() {
+        for (String fileName : FILE_NAMES) {
+            assertEquals(fileName, regexProducerCode(fileName), S100FileName.producerCode(fileName));
+            assertEquals(fileName, regexStandardNumber(fileName), S100FileName.standardNumber(fileName));
+        }
+    }
+
+    public void testParse() {
+        assertNull(S100DataSetName.parse(null));
+        assertNull(S100DataSetName.parse("S101/101N"));
+
+        S100DataSetName name = S100DataSetName.parse("S101/DATASET_FILES/101NO00ABCDEF.000");
+        assertEquals(Integer.valueOf(101), name.getStandardNumber());
+        assertEquals(new S100ProductSpecification(101), name.getProductSpecification());
+        assertEquals("NO", name.getProducerCode());
+        assertEquals("ABCDEF", name.getCellId());
+        assertEquals("000", name.getSuffix());
+
+        name = S100DataSetName.parse(new StringBuilder("S102NOABCDEF.h5"));
+        assertEquals(Integer.valueOf(102), name.getStandardNumber());
+        assertEquals("NO", name.getProducerCode());
+        assertEquals("ABCDEF", name.getCellId());
+        assertEquals("h5", name.getSuffix());
+
+        name = S100DataSetName.parse("ABCDE");
+        assertNull(name.getStandardNumber());
+        assertNull(name.getProductSpecification());
+        assertNull(name.getSuffix());
+    }
+
+    // the original implementation based on regular expressions
+
+    private static final String PATTERN_1 = "^([0-9]{3})([A-Z0-9]{4}).*";
+    private static final String PATTERN_2 = "^S([0-9]{3})([A-Z0-9]{2}).*";
+
+    private static String regexProducerCode(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        fileName = FileUtils.getBaseName(fileName);
+        if (fileName.length() < 5) {
+            return null;
+        }
+        if (fileName.matches(PATTERN_1)) {
+            String producerCode = fileName.replaceAll(PATTERN_1, "$2");
+            while (producerCode.endsWith("0")) {
+                producerCode = producerCode.substring(0, producerCode.length() - 1);
+            }
+            return producerCode;
+        }
+        if (fileName.matches(PATTERN_2)) {
+            return fileName.replaceAll(PATTERN_2, "$2");
+        }
+        return fileName.substring(0, 2);
+    }
+
+    private static Integer regexStandardNumber(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        fileName = FileUtils.getBaseName(fileName);
+        if (fileName.length() < 5) {
+            return null;
+        }
+        if (fileName.matches(PATTERN_1)) {
+            return Integer.valueOf(fileName.replaceAll(PATTERN_1, "$1"));
+        }
+        if (fileName.matches(PATTERN_2)) {
+            return Integer.valueOf(fileName.replaceAll(PATTERN_2, "$1"));
+        }
+        String fileNameWithoutSuffix = FileUtils.getFileNameWithoutSuffix(fileName);
+        if (fileNameWithoutSuffix.length() == 10) {
+            return Integer.valueOf(101);
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,43 @@
+package no.ecc.s100;
+
+import junit.framework.TestCase;
+
+public class S100ProductSpecificationTest extends TestCase {
+
+    public void testValueOf() {
+        S100ProductSpecification s101 = S100ProductSpecification.valueOf(101);
+        assertSame(s101, S100ProductSpecification.valueOf("101"));
+        assertSame(s101, S100ProductSpecification.valueOf("S101"));
+        assertSame(s101, S100ProductSpecification.valueOf("S-101"));
+        assertSame(s101, S100ProductSpecification.valueOf("101NO00ABCDEF.000"));
+        assertSame(s101, S100ProductSpecification.valueOf("S101/DATASET_FILES/101NO00ABCDEF.000"));
+        assertSame(s101, S100ProductSpecification.valueOf("Some S-101 data"));
+        assertEquals(s101, new S100ProductSpecification("S-101"));
+        assertEquals(102, S100ProductSpecification.valueOf("S102NOABCDEF.h5").getNumber());
+    }
+
+    public void testParseOrNull() {
+        assertNull(S100ProductSpecification.parseOrNull(null));
+        assertNull(S100ProductSpecification.parseOrNull(""));
+        assertNull(S100ProductSpecification.parseOrNull("S-1"));
+        assertNull(S100ProductSpecification.parseOrNull("99"));
+        assertNull(S100ProductSpecification.parseOrNull("1000"));
+        assertNull(S100ProductSpecification.parseOrNull("99999999999999999999"));
+        assertNull(S100ProductSpecification.createOrNull("SABC"));
+        assertEquals(999, S100ProductSpecification.parseOrNull("S999").getNumber());
+    }
+
+    public void testIllegal() {
+        try {
+            S100ProductSpecification.valueOf(99);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new S100ProductSpecification("S-ABC");
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+}
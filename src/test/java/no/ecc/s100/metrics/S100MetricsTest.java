@@ -0,0 +1,137 @@
+package no.ecc.s100.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+import com.google.common.io.ByteStreams;
+
+import junit.framework.TestCase;
+import no.ecc.s100.security.S100Crypt;
+import no.ecc.s100.security.S100CryptSession;
+import no.ecc.s100.security.S100Manufacturer;
+
+public class S100MetricsTest extends TestCase {
+
+    public void testHistogram() {
+        S100Histogram histogram = new S100Histogram("test");
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        // 50 is in the bucket 32..63
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    public void testCrypt() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV("1C81DFAB4053D04803FFDC87EF92FDD1");
+        S100Metrics.reset();
+        byte[] encrypted = crypt.encrypt(new byte[100]);
+        assertEquals(0, S100Metrics.BYTES_ENCRYPTED.get());
+
+        S100Metrics.setEnabled(true);
+        try {
+            encrypted = crypt.encrypt(new byte[100]);
+            crypt.decrypt(encrypted);
+        } finally {
+            S100Metrics.setEnabled(false);
+        }
+        assertEquals(100, S100Metrics.BYTES_ENCRYPTED.get());
+        assertEquals(100, S100Metrics.BYTES_DECRYPTED.get());
+        assertTrue(S100Metrics.report().contains("bytesDecrypted=100"));
+    }
+
+    public void testDisabled() {
+        assertFalse(S100Metrics.isEnabled());
+        // no Flight Recorder recording is running
+        assertNull(S100Metrics.cryptStart(S100Metrics.ENCRYPT));
+        assertNull(S100Metrics.signatureStart());
+        S100Metrics.cryptEnd(null, 100);
+        S100Metrics.signatureEnd(null, true);
+    }
+
+    public void testCryptStreamAndSession() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV("1C81DFAB4053D04803FFDC87EF92FDD1");
+        byte[] encrypted = new byte[1000];
+        S100Metrics.reset();
+        S100Metrics.setEnabled(true);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (OutputStream out = crypt.encrypt(bytes)) {
+                out.write(new byte[100]);
+            }
+            assertEquals(100, S100Metrics.BYTES_ENCRYPTED.get());
+            try (InputStream in = crypt.decrypt(new ByteArrayInputStream(bytes.toByteArray()))) {
+                assertEquals(100, ByteStreams.toByteArray(in).length);
+            }
+            assertEquals(100, S100Metrics.BYTES_DECRYPTED.get());
+
+            S100CryptSession session = crypt.newSession();
+            int n = session.encrypt(new byte[50], 0, 50, encrypted, 0);
+            assertEquals(150, S100Metrics.BYTES_ENCRYPTED.get());
+            session.decrypt(encrypted, 0, n, new byte[1000], 0);
+            assertEquals(150, S100Metrics.BYTES_DECRYPTED.get());
+        } finally {
+            S100Metrics.setEnabled(false);
+        }
+    }
+
+    public void testCryptChannelAndPath() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV("1C81DFAB4053D04803FFDC87EF92FDD1");
+        Path plain = Files.createTempFile("s100metrics", ".000");
+        Path encrypted = Files.createTempFile("s100metrics", ".enc");
+        S100Metrics.reset();
+        S100Metrics.setEnabled(true);
+        try {
+            // the random first block is not counted
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            crypt.encrypt(Channels.newChannel(new ByteArrayInputStream(new byte[100])), Channels.newChannel(bytes));
+            assertEquals(100, S100Metrics.BYTES_ENCRYPTED.get());
+
+            Files.write(plain, new byte[50]);
+            crypt.encrypt(plain, encrypted);
+            assertEquals(150, S100Metrics.BYTES_ENCRYPTED.get());
+            crypt.decrypt(encrypted, plain);
+            assertEquals(50, S100Metrics.BYTES_DECRYPTED.get());
+        } finally {
+            S100Metrics.setEnabled(false);
+            Files.delete(plain);
+            Files.delete(encrypted);
+        }
+    }
+
+    public void testHwIdDecryptFailure() throws Exception {
+        S100Manufacturer manufacturer = new S100Manufacturer("123456", "1C81DFAB4053D04803FFDC87EF92FDD1");
+        S100Metrics.reset();
+        S100Metrics.setEnabled(true);
+        try {
+            manufacturer.decrypt(manufacturer.encrypt("00112233445566778899AABBCCDDEEFF"));
+            assertEquals(1, S100Metrics.HW_ID_DECRYPTS.get());
+            try {
+                // not a multiple of the block size
+                manufacturer.decrypt("0011");
+                fail();
+            } catch (GeneralSecurityException | RuntimeException e) {
+            }
+            assertEquals(1, S100Metrics.HW_ID_DECRYPTS.get());
+        } finally {
+            S100Metrics.setEnabled(false);
+        }
+    }
+
+}
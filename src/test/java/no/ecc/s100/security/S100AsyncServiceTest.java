@@ -0,0 +1,208 @@
+package no.ecc.s100.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+public class S100AsyncServiceTest extends TestCase {
+
+    private static final String KEY = "1C81DFAB4053D04803FFDC87EF92FDD1";
+
+    public void testDecryptFiles() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        Path dir = Files.createTempDirectory("s100async");
+        try (S100AsyncService service = new S100AsyncService(2, 3)) {
+            List<byte[]> data = new ArrayList<>();
+            List<CompletableFuture<Long>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                byte[] d = new byte[1000 * i];
+                ThreadLocalRandom.current().nextBytes(d);
+                data.add(d);
+                Path encrypted = dir.resolve("encrypted" + i);
+                Files.write(encrypted, crypt.encrypt(d));
+                results.add(i % 2 == 0 ? service.decryptFile(crypt, encrypted, dir.resolve("decrypted" + i))
+                        : service.decryptUpload(crypt, new ByteArrayInputStream(crypt.encrypt(d)),
+                                dir.resolve("decrypted" + i)));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(1000 * i, results.get(i).get().longValue());
+                assertTrue(Arrays.equals(data.get(i), Files.readAllBytes(dir.resolve("decrypted" + i))));
+            }
+
+            try {
+                service.decryptFile(crypt, dir.resolve("missing"), dir.resolve("out")).get();
+                fail();
+            } catch (ExecutionException e) {
+                // expected
+            }
+            assertEquals(0, service.getInFlight());
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    public void testBackpressure() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        Path dir = Files.createTempDirectory("s100async");
+        Path encrypted = dir.resolve("encrypted");
+        Files.write(encrypted, crypt.encrypt(new byte[100]));
+        CountDownLatch release = new CountDownLatch(1);
+        try (S100AsyncService service = new S100AsyncService(1, 2)) {
+            // two uploads that do not complete until released
+            List<CompletableFuture<Long>> held = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                held.add(service.decryptUpload(crypt, new BlockingInputStream(release), dir.resolve("held" + i)));
+            }
+            assertEquals(2, service.getInFlight());
+
+            CompletableFuture<CompletableFuture<Long>> submitted = new CompletableFuture<>();
+            Thread caller = new Thread(
+                    () -> submitted.complete(service.decryptFile(crypt, encrypted, dir.resolve("decrypted"))));
+            caller.start();
+            caller.join(200);
+            assertTrue(caller.isAlive());
+            assertFalse(submitted.isDone());
+
+            release.countDown();
+            caller.join(10000);
+            assertFalse(caller.isAlive());
+            assertEquals(100, submitted.get().get().longValue());
+            for (CompletableFuture<Long> future : held) {
+                try {
+                    future.get();
+                    fail();
+                } catch (ExecutionException e) {
+                    // the blocking stream fail when released
+                }
+            }
+            assertEquals(0, service.getInFlight());
+        } finally {
+            release.countDown();
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    public void testNoBlockingOnCpuThread() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        Path encrypted = Files.createTempFile("s100async", ".encrypted");
+        Files.write(encrypted, crypt.encrypt(new byte[100]));
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        S100PermitFileTest.createPermitFile(1).write(xml);
+        try (S100AsyncService service = new S100AsyncService(1, 1)) {
+            List<CompletableFuture<Long>> nested = new ArrayList<>();
+            // the lookup is called on a CPU thread while the parse hold the only room
+            S100ManufacturerLookup lookup = mId -> {
+                nested.add(service.decryptFile(crypt, encrypted, encrypted.resolveSibling("out")));
+                return S100PermitFileTest.MANUFACTURER_LOOKUP.manufacturerForMId(mId);
+            };
+            service.parsePermitFile(lookup, new ByteArrayInputStream(xml.toByteArray())).get();
+            assertEquals(1, nested.size());
+            try {
+                nested.get(0).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        } finally {
+            Files.delete(encrypted);
+        }
+    }
+
+    public void testUploadFailureDeleteTemporaryFile() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        Path dir = Files.createTempDirectory("s100async");
+        try (S100AsyncService service = new S100AsyncService(1, 1)) {
+            CountDownLatch released = new CountDownLatch(0);
+            try {
+                service.decryptUpload(crypt, new BlockingInputStream(released), dir.resolve("decrypted")).get();
+                fail();
+            } catch (ExecutionException e) {
+                // expected
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    public void testVerifyAndParse() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+        Path file = Files.createTempFile("s100async", ".xml");
+        try (S100AsyncService service = new S100AsyncService()) {
+            S100PermitFile permitFile = S100PermitFileTest.createPermitFile(10);
+            ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            permitFile.write(xml);
+            Files.write(file, xml.toByteArray());
+
+            S100Signature signature = new S100Signature();
+            signature.initSign(keyPair.getPrivate());
+            signature.update(xml.toByteArray());
+            signature.sign();
+
+            assertTrue(service.verifyFile(keyPair.getPublic(), file, signature.toString()).get().booleanValue());
+
+            S100PermitFile parsed = service.parsePermitFile(S100PermitFileTest.MANUFACTURER_LOOKUP, file).get();
+            assertEquals(permitFile.getDataPermits().size(), parsed.getDataPermits().size());
+            parsed = service.parsePermitFile(S100PermitFileTest.MANUFACTURER_LOOKUP,
+                    new ByteArrayInputStream(xml.toByteArray())).get();
+            assertEquals(permitFile.getDataPermits().size(), parsed.getDataPermits().size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Block until released, and then fail.
+     */
+    private static final class BlockingInputStream extends InputStream {
+
+        private final CountDownLatch release;
+
+        BlockingInputStream(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Upload failed");
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+package no.ecc.s100.security;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import junit.framework.TestCase;
+
+public class S100BulkEncryptorTest extends TestCase {
+
+    public void testEncryptDirectory() throws Exception {
+        String dataKey = "1C81DFAB4053D04803FFDC87EF92FDD1";
+        Path source = Files.createTempDirectory("s100source");
+        Path target = Files.createTempDirectory("s100target");
+        try {
+            byte[][] data = new byte[5][];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = new byte[ThreadLocalRandom.current().nextInt(200000)];
+                ThreadLocalRandom.current().nextBytes(data[i]);
+                Files.createDirectories(source.resolve("S101"));
+                Files.write(source.resolve("S101").resolve("101NO0000" + i + ".000"), data[i]);
+            }
+
+            List<S100BulkEncryptor.Result> results = new S100BulkEncryptor(3).encryptDirectory(source, target,
+                    f -> dataKey);
+            assertEquals(data.length, results.size());
+
+            S100Crypt crypt = new S100Crypt.RandomIV(dataKey);
+            for (int i = 0; i < data.length; i++) {
+                S100BulkEncryptor.Result result = results.get(i);
+                assertTrue(result.toString(), result.isSuccess());
+                assertEquals(data[i].length, result.getBytes());
+                byte[] encrypted = Files.readAllBytes(target.resolve("S101").resolve("101NO0000" + i + ".000"));
+                assertTrue(Arrays.equals(data[i], crypt.decrypt(encrypted)));
+            }
+        } finally {
+            MoreFiles.deleteRecursively(source, RecursiveDeleteOption.ALLOW_INSECURE);
+            MoreFiles.deleteRecursively(target, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    public void testFailureIsReported() throws Exception {
+        Path target = Files.createTempDirectory("s100target");
+        try {
+            S100BulkEncryptor.Job job = new S100BulkEncryptor.Job(target.resolve("missing.000"),
+                    target.resolve("out.000"), "1C81DFAB4053D04803FFDC87EF92FDD1");
+            List<S100BulkEncryptor.Result> results = new S100BulkEncryptor(2).encrypt(Arrays.asList(job));
+            assertEquals(1, results.size());
+            assertFalse(results.get(0).isSuccess());
+            assertNotNull(results.get(0).getFailure());
+        } finally {
+            Files.deleteIfExists(target.resolve("out.000"));
+            Files.delete(target);
+        }
+    }
+
+    public void testPartialOutputIsDeleted() throws Exception {
+        Path dir = Files.createTempDirectory("s100target");
+        try {
+            // a directory can be opened, but not read
+            S100BulkEncryptor.Job job = new S100BulkEncryptor.Job(dir, dir.resolve("out.000"),
+                    "1C81DFAB4053D04803FFDC87EF92FDD1");
+            List<S100BulkEncryptor.Result> results = new S100BulkEncryptor(1).encrypt(Arrays.asList(job));
+            assertFalse(results.get(0).isSuccess());
+            assertFalse(Files.exists(dir.resolve("out.000")));
+        } finally {
+            Files.deleteIfExists(dir.resolve("out.000"));
+            Files.delete(dir);
+        }
+    }
+
+}
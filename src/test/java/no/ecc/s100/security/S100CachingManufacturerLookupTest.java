@@ -0,0 +1,33 @@
+package no.ecc.s100.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+
+import junit.framework.TestCase;
+
+public class S100CachingManufacturerLookupTest extends TestCase {
+
+    public void testCache() throws Exception {
+        S100CachingManufacturerLookup lookup = new S100CachingManufacturerLookup(
+                S100PermitFileTest.MANUFACTURER_LOOKUP, 100, Duration.ofMinutes(10));
+        assertNull(lookup.manufacturerForMId("000000"));
+
+        S100Manufacturer m = lookup.manufacturerForMId(S100PermitFileTest.M_ID);
+        assertSame(m, lookup.manufacturerForMId(S100PermitFileTest.M_ID));
+        assertEquals(S100PermitFileTest.M_KEY, m.encrypt(S100PermitFileTest.HW_ID));
+
+        S100UserPermit userPermit = new S100UserPermit(S100PermitFileTest.USER_PERMIT);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(S100PermitFileTest.HW_ID, lookup.decryptHwId(userPermit));
+        }
+        assertEquals(1, lookup.getHwIdCacheStats().missCount());
+        assertEquals(2, lookup.getHwIdCacheStats().hitCount());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        S100PermitFileTest.createPermitFile(1).write(out);
+        new S100PermitFile(lookup, new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, lookup.getHwIdCacheStats().hitCount());
+    }
+
+}
@@ -0,0 +1,138 @@
+package no.ecc.s100.security;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import junit.framework.TestCase;
+import no.ecc.s100.utility.Hex;
+
+public class S100CryptSessionTest extends TestCase {
+
+    private static final String KEY = "1C81DFAB4053D04803FFDC87EF92FDD1";
+
+    public void testRandomIV() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        S100CryptSession session = crypt.newSession();
+
+        byte[] out = new byte[1024];
+        byte[] decrypted = new byte[1024];
+        for (int len = 0; len < 100; len++) {
+            byte[] data = new byte[len];
+            ThreadLocalRandom.current().nextBytes(data);
+
+            int n = session.encrypt(data, 0, len, out, 0);
+            assertEquals(session.encryptedLength(len), n);
+            byte[] encrypted = Arrays.copyOf(out, n);
+            assertTrue(Arrays.equals(data, crypt.decrypt(encrypted)));
+
+            int m = session.decrypt(encrypted, 0, n, decrypted, 0);
+            assertTrue(Arrays.equals(data, Arrays.copyOf(decrypted, m)));
+
+            encrypted = crypt.encrypt(data);
+            m = session.decrypt(encrypted, 0, encrypted.length, decrypted, 0);
+            assertTrue(Arrays.equals(data, Arrays.copyOf(decrypted, m)));
+        }
+    }
+
+    public void testRandomIVByteBuffer() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        S100CryptSession session = crypt.newSession();
+
+        ByteBuffer out = ByteBuffer.allocateDirect(1024);
+        ByteBuffer decrypted = ByteBuffer.allocateDirect(1024);
+        for (int len = 0; len < 100; len++) {
+            byte[] data = new byte[len];
+            ThreadLocalRandom.current().nextBytes(data);
+
+            out.clear();
+            int n = session.encrypt(ByteBuffer.wrap(data), out);
+            assertEquals(session.encryptedLength(len), n);
+            out.flip();
+            byte[] encrypted = new byte[n];
+            out.duplicate().get(encrypted);
+            assertTrue(Arrays.equals(data, crypt.decrypt(encrypted)));
+
+            decrypted.clear();
+            int m = session.decrypt(out, decrypted);
+            assertEquals(len, m);
+            decrypted.flip();
+            byte[] result = new byte[m];
+            decrypted.get(result);
+            assertTrue(Arrays.equals(data, result));
+        }
+    }
+
+    public void testEmptyIVNoPadding() throws Exception {
+        String hwId = "AB40384B45B54596201114FE99042201";
+        S100CryptSession session = new S100Crypt.EmptyIVNoPadding(hwId).newSession();
+
+        byte[] out = new byte[16];
+        byte[] dataKey = Hex.fromString(KEY);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(16, session.encrypt(dataKey, 0, dataKey.length, out, 0));
+            assertEquals("172019407CDA6B8C1F545CCDB11B7297", Hex.toString(out));
+        }
+        byte[] decrypted = new byte[16];
+        assertEquals(16, session.decrypt(out, 0, out.length, decrypted, 0));
+        assertEquals(KEY, Hex.toString(decrypted));
+    }
+
+    public void testGeneric() throws Exception {
+        // the generic session with random prefix, skip and padding
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        S100CryptSession session = new S100CryptSession.Generic(crypt);
+
+        byte[] out = new byte[1024];
+        byte[] decrypted = new byte[1024];
+        ByteBuffer decryptedBuffer = ByteBuffer.allocate(1024);
+        for (int len = 0; len < 100; len++) {
+            byte[] data = new byte[len];
+            ThreadLocalRandom.current().nextBytes(data);
+
+            int n = session.encrypt(data, 0, len, out, 0);
+            assertEquals(session.encryptedLength(len), n);
+            byte[] encrypted = Arrays.copyOf(out, n);
+            assertTrue(Arrays.equals(data, crypt.decrypt(encrypted)));
+
+            int m = session.decrypt(encrypted, 0, n, decrypted, 0);
+            assertTrue(Arrays.equals(data, Arrays.copyOf(decrypted, m)));
+
+            decryptedBuffer.clear();
+            assertEquals(len, session.decrypt(ByteBuffer.wrap(crypt.encrypt(data)), decryptedBuffer));
+            assertTrue(Arrays.equals(data, Arrays.copyOf(decryptedBuffer.array(), len)));
+        }
+    }
+
+    public void testNoCipher() throws Exception {
+        // a subclass only implementing the stream methods
+        S100Crypt crypt = new S100Crypt(KEY) {
+
+            @Override
+            public InputStream encrypt(InputStream in) {
+                return in;
+            }
+
+            @Override
+            public OutputStream encrypt(OutputStream out) {
+                return out;
+            }
+
+            @Override
+            public InputStream decrypt(InputStream in) {
+                return in;
+            }
+
+        };
+        try {
+            crypt.newSession();
+            fail();
+        } catch (GeneralSecurityException e) {
+            // expected
+        }
+    }
+
+}
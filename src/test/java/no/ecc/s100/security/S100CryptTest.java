@@ -0,0 +1,149 @@
+package no.ecc.s100.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import junit.framework.TestCase;
+
+public class S100CryptTest extends TestCase {
+
+    private static final String KEY = "1C81DFAB4053D04803FFDC87EF92FDD1";
+
+    public void testRandomIVChannels() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        for (int len : new int[] { 0, 1, 15, 16, 17, 3 * 1024 * 1024 + 5 }) {
+            byte[] data = randomBytes(len);
+
+            ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+            crypt.encrypt(Channels.newChannel(new ByteArrayInputStream(data)),
+                    Channels.newChannel(encrypted));
+            assertTrue(Arrays.equals(data, crypt.decrypt(encrypted.toByteArray())));
+
+            ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+            long n = crypt.decrypt(Channels.newChannel(new ByteArrayInputStream(crypt.encrypt(data))),
+                    Channels.newChannel(decrypted));
+            assertEquals(len, n);
+            assertTrue(Arrays.equals(data, decrypted.toByteArray()));
+        }
+    }
+
+    public void testRandomIVPaths() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        Path dir = Files.createTempDirectory("s100crypt");
+        try {
+            Path plain = dir.resolve("plain");
+            Path encrypted = dir.resolve("encrypted");
+            Path decrypted = dir.resolve("decrypted");
+            for (int len : new int[] { 0, 33, 2 * 1024 * 1024 + 1 }) {
+                byte[] data = randomBytes(len);
+                Files.write(plain, data);
+                crypt.encrypt(plain, encrypted);
+                assertTrue(Arrays.equals(data, crypt.decrypt(Files.readAllBytes(encrypted))));
+                assertEquals(len, crypt.decrypt(encrypted, decrypted));
+                assertTrue(Arrays.equals(data, Files.readAllBytes(decrypted)));
+            }
+        } finally {
+            MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    public void testEmptyIVNoPaddingPaths() throws Exception {
+        S100Crypt crypt = new S100Crypt.EmptyIVNoPadding(KEY);
+        Path dir = Files.createTempDirectory("s100crypt");
+        try {
+            Path plain = dir.resolve("plain");
+            Path encrypted = dir.resolve("encrypted");
+            Path decrypted = dir.resolve("decrypted");
+            byte[] data = randomBytes(16 * 1000);
+            Files.write(plain, data);
+            crypt.encrypt(plain, encrypted);
+            assertTrue(Arrays.equals(crypt.encrypt(data), Files.readAllBytes(encrypted)));
+            crypt.decrypt(encrypted, decrypted);
+            assertTrue(Arrays.equals(data, Files.readAllBytes(decrypted)));
+        } finally {
+            MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    public void testFailedPathDeleteOutput() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        Path dir = Files.createTempDirectory("s100crypt");
+        try {
+            // not a whole number of blocks
+            Path encrypted = dir.resolve("encrypted");
+            Path decrypted = dir.resolve("decrypted");
+            Files.write(encrypted, randomBytes(33));
+            try {
+                crypt.decrypt(encrypted, decrypted);
+                fail();
+            } catch (GeneralSecurityException e) {
+                // expected
+            }
+            assertFalse(Files.exists(decrypted));
+        } finally {
+            MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    public void testRandomIVSeekable() throws Exception {
+        assertSeekable(new S100Crypt.RandomIV(KEY), new int[] { 0, 1, 15, 16, 17, 200 * 1024 + 3 });
+    }
+
+    public void testEmptyIVNoPaddingSeekable() throws Exception {
+        assertSeekable(new S100Crypt.EmptyIVNoPadding(KEY), new int[] { 0, 16, 32, 200 * 1024 });
+    }
+
+    private static void assertSeekable(S100Crypt crypt, int[] lengths) throws Exception {
+        Path encrypted = Files.createTempFile("s100crypt", ".enc");
+        try {
+            for (int len : lengths) {
+                byte[] data = randomBytes(len);
+                Files.write(encrypted, crypt.encrypt(data));
+                try (SeekableByteChannel channel = crypt.openDecrypted(encrypted)) {
+                    assertEquals(len, channel.size());
+
+                    // sequential
+                    ByteBuffer all = ByteBuffer.allocate(len + 10);
+                    while (channel.read(all) > 0) {
+                    }
+                    assertEquals(len, all.position());
+                    assertTrue(Arrays.equals(data, Arrays.copyOf(all.array(), len)));
+                    assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+
+                    // random ranges
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 50 && len > 0; i++) {
+                        int from = random.nextInt(len);
+                        int to = from + random.nextInt(len - from + 1);
+                        ByteBuffer range = ByteBuffer.allocate(to - from);
+                        channel.position(from);
+                        while (range.hasRemaining() && channel.read(range) > 0) {
+                        }
+                        assertEquals(to, channel.position());
+                        assertTrue(Arrays.equals(Arrays.copyOfRange(data, from, to), range.array()));
+                    }
+                }
+            }
+        } finally {
+            Files.delete(encrypted);
+        }
+    }
+
+    private static byte[] randomBytes(int len) {
+        byte[] data = new byte[len];
+        ThreadLocalRandom.current().nextBytes(data);
+        return data;
+    }
+
+}
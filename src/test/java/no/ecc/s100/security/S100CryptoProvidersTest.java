@@ -0,0 +1,62 @@
+package no.ecc.s100.security;
+
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+public class S100CryptoProvidersTest extends TestCase {
+
+    private static final String KEY = "1C81DFAB4053D04803FFDC87EF92FDD1";
+
+    @Override
+    protected void tearDown() {
+        S100CryptoProviders.setCipherProvider(null);
+        S100CryptoProviders.setSignatureProvider(null);
+    }
+
+    public void testBouncyCastle() throws Exception {
+        byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 7);
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        byte[] encrypted = crypt.encrypt(data);
+
+        S100CryptoProviders.setCipherProvider(new BouncyCastleProvider());
+        S100CryptoProviders.setSignatureProvider(new BouncyCastleProvider());
+        assertEquals("BC", S100CryptoProviders.getCipherProviderName());
+        assertEquals("BC", S100CryptoProviders.getSignatureProviderName());
+        assertTrue(Arrays.equals(data, crypt.decrypt(encrypted)));
+        assertTrue(Arrays.equals(data, crypt.decrypt(crypt.encrypt(data))));
+
+        S100CryptSession session = crypt.newSession();
+        byte[] sessionEncrypted = new byte[session.encryptedLength(data.length)];
+        session.encrypt(data, 0, data.length, sessionEncrypted, 0);
+        assertTrue(Arrays.equals(data, crypt.decrypt(sessionEncrypted)));
+    }
+
+    public void testUnknownProvider() throws Exception {
+        assertNull(S100CryptoProviders.provider(null));
+        assertEquals("BC", S100CryptoProviders.provider("BC").getName());
+
+        S100CryptoProviders.setCipherProvider(S100CryptoProviders.provider("NoSuchProvider"));
+        assertNull(S100CryptoProviders.getCipherProviderName());
+        try {
+            new S100Crypt.RandomIV(KEY).encrypt(new byte[10]);
+            fail();
+        } catch (GeneralSecurityException e) {
+            // expected
+        }
+    }
+
+    public void testSelectFastest() {
+        S100CryptoProviders.Selection selection = S100CryptoProviders.selectFastest(Duration.ofMillis(10));
+        assertTrue(selection.getCipherMBPerSecond().containsKey("BC"));
+        assertTrue(selection.getSignatureVerifiesPerSecond().containsKey("BC"));
+        assertTrue(selection.getCipherMBPerSecond().containsKey(selection.getCipherProviderName()));
+        assertTrue(selection.getSignatureVerifiesPerSecond().containsKey(selection.getSignatureProviderName()));
+    }
+
+}
@@ -0,0 +1,93 @@
+package no.ecc.s100.security;
+
+import static no.ecc.s100.security.S100PermitIndexTest.permit;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import no.ecc.s100.S100ProductSpecification;
+
+public class S100DataPermitTableTest extends TestCase {
+
+    public void testCompactDataPermit() throws Exception {
+        S100DataPermit dataPermit = permit("102NO00AAAAAA.h5", 3, "2027-02-03");
+        S100CompactDataPermit compact = S100CompactDataPermit.valueOf(dataPermit);
+        assertEquals("102NO00AAAAAA.h5", compact.getFileName());
+        assertEquals(3, compact.getEdtn());
+        assertEquals(dataPermit.getPermitEndDate(), compact.getPermitEndDate());
+        assertEquals(dataPermit.getPermitEndLocalDate(), compact.getPermitEndLocalDate());
+        assertEquals(dataPermit.getEncryptedDataKey(), compact.getEncryptedDataKey());
+        assertEquals(S100ProductSpecification.valueOf(102), compact.getProductSpecification());
+        assertEquals(dataPermit.decryptDataKey(S100PermitFileTest.HW_ID),
+                compact.decryptDataKey(S100PermitFileTest.HW_ID));
+        assertEquals(dataPermit, compact.toDataPermit());
+    }
+
+    public void testTable() throws Exception {
+        S100DataPermitTable table = new S100DataPermitTable(1);
+        assertTrue(table.add(permit("101NO00AAAAAA.000", 1, "2027-01-01")));
+        assertTrue(table.add(permit("101NO00BBBBBB.000", 1, "2027-01-01")));
+        assertTrue(table.add(permit("101NO00CCCCCC.000", 1, "2027-01-01")));
+        S100DataPermit newer = permit("101NO00BBBBBB.000", 2, "2026-01-01");
+        assertTrue(table.add(newer));
+        assertFalse(table.add(permit("101NO00BBBBBB.000", 1, "2028-01-01")));
+        assertFalse(table.add(permit("101NO00BBBBBB.000", 2, "2026-01-01")));
+        assertEquals(3, table.size());
+
+        int row = table.indexOf("101NO00BBBBBB.000");
+        assertEquals(2, table.getEdtn(row));
+        assertEquals(newer.getEncryptedDataKey(), table.getEncryptedDataKey(row));
+        assertEquals(newer.getPermitEndDate(), table.getPermitEndDate(row));
+        assertEquals(S100ProductSpecification.valueOf(101), table.getProductSpecification(row));
+        assertEquals(newer.getEncryptedDataKey(), table.get("101NO00BBBBBB.000").getEncryptedDataKey());
+        assertEquals(newer.getEncryptedDataKey(), table.getCompact(row).getEncryptedDataKey());
+        assertNull(table.get("101NO00DDDDDD.000"));
+
+        assertTrue(table.remove("101NO00AAAAAA.000"));
+        assertFalse(table.remove("101NO00AAAAAA.000"));
+        assertEquals(2, table.size());
+        assertEquals(-1, table.indexOf("101NO00AAAAAA.000"));
+        assertEquals("101NO00CCCCCC.000", table.getFileName(table.indexOf("101NO00CCCCCC.000")));
+        assertEquals(Arrays.asList("101NO00CCCCCC.000", "101NO00BBBBBB.000"),
+                S100PermitIndexTest.fileNames(table.getDataPermits()));
+
+        S100DataPermitTable copy = new S100DataPermitTable(0);
+        assertTrue(copy.add(table.getCompact(0)));
+        assertEquals(table.get(0).getEncryptedDataKey(), copy.get(0).getEncryptedDataKey());
+    }
+
+    public void testLookupAfterManyChanges() {
+        S100DataPermitTable table = new S100DataPermitTable(0);
+        Map<String, Integer> edtnByFileName = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            // "Aa" and "BB" have the same hash code, so there are many collisions
+            StringBuilder fileName = new StringBuilder();
+            for (int j = 0; j < 10; j++) {
+                fileName.append(random.nextBoolean() ? "Aa" : "BB");
+            }
+            String name = random.nextBoolean() ? fileName.toString() : "101NO" + random.nextInt(2000) + ".000";
+            if (random.nextInt(3) == 0) {
+                assertEquals(edtnByFileName.remove(name) != null, table.remove(name));
+            } else {
+                int edtn = random.nextInt(5);
+                Integer existing = edtnByFileName.get(name);
+                boolean added = existing == null || edtn > existing.intValue();
+                assertEquals(added, table.add(new S100CompactDataPermit(name, edtn, 0, 0, 0, 101)));
+                if (added) {
+                    edtnByFileName.put(name, Integer.valueOf(edtn));
+                }
+            }
+        }
+        assertEquals(edtnByFileName.size(), table.size());
+        for (Map.Entry<String, Integer> e : edtnByFileName.entrySet()) {
+            int row = table.indexOf(e.getKey());
+            assertEquals(e.getKey(), table.getFileName(row));
+            assertEquals(e.getValue().intValue(), table.getEdtn(row));
+        }
+    }
+
+}
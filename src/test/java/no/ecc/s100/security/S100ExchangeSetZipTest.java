@@ -0,0 +1,89 @@
+package no.ecc.s100.security;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.io.ByteStreams;
+
+import junit.framework.TestCase;
+import no.ecc.s100.S100ProductSpecification;
+
+public class S100ExchangeSetZipTest extends TestCase {
+
+    public void testReadZip() throws Exception {
+        S100ProductSpecification s101 = S100ProductSpecification.valueOf(101);
+        String dataKey = S100UserPermit.createRandomHwId();
+        String fileName = "101NO00ABCDEF.000";
+        byte[] data = new byte[100000];
+        ThreadLocalRandom.current().nextBytes(data);
+
+        S100PermitFile permitFile = new S100PermitFile("ECC", S100PermitFileTest.HW_ID,
+                S100PermitFileTest.USER_PERMIT);
+        permitFile.add(fileName, 1, new Date(), dataKey, s101);
+
+        Path zip = Files.createTempFile("s100exchangeset", ".zip");
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+                out.putNextEntry(new ZipEntry("S100_ROOT/PERMIT.XML"));
+                ByteArrayOutputStream permitXml = new ByteArrayOutputStream();
+                permitFile.write(permitXml);
+                out.write(permitXml.toByteArray());
+                out.putNextEntry(new ZipEntry("S100_ROOT/S101/S101ed1.CAT"));
+                out.write(new byte[10]);
+                out.putNextEntry(new ZipEntry("S100_ROOT/S101/DATASET_FILES/"));
+                out.putNextEntry(new ZipEntry("S100_ROOT/S101/DATASET_FILES/" + fileName));
+                try (OutputStream encrypted = new S100Crypt.RandomIV(dataKey).encrypt(new NonClosingOutputStream(out))) {
+                    encrypted.write(data);
+                }
+            }
+
+            try (S100ExchangeSetZip exchangeSet = new S100ExchangeSetZip(zip)) {
+                assertEquals("S100_ROOT/PERMIT.XML", exchangeSet.getPermitFileEntryName());
+                assertEquals("S100_ROOT/S101/S101ed1.CAT", exchangeSet.getCatalogueEntryName(s101));
+                assertEquals(Collections.singletonList("S100_ROOT/S101/DATASET_FILES/" + fileName),
+                        exchangeSet.getDataSetEntryNames(s101));
+                assertTrue(exchangeSet.getDataSetEntryNames(S100ProductSpecification.valueOf(102)).isEmpty());
+
+                S100PermitFile read = exchangeSet.readPermitFile(S100PermitFileTest.MANUFACTURER_LOOKUP);
+                try (InputStream in = exchangeSet.decrypt("S100_ROOT/S101/DATASET_FILES/" + fileName, read)) {
+                    assertTrue(Arrays.equals(data, ByteStreams.toByteArray(in)));
+                }
+                try (S100PermitFileReader reader = exchangeSet.permitFileReader()) {
+                    assertEquals(fileName, reader.next().getFileName());
+                }
+            }
+        } finally {
+            Files.delete(zip);
+        }
+    }
+
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package no.ecc.s100.security;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class S100ParallelDecryptorTest extends TestCase {
+
+    private static final String KEY = "1C81DFAB4053D04803FFDC87EF92FDD1";
+
+    public void testRandomIV() throws Exception {
+        assertParallelDecrypt(new S100Crypt.RandomIV(KEY), new int[] { 0, 15, 16, 4095, 4096, 4097, 100000 });
+    }
+
+    public void testEmptyIVNoPadding() throws Exception {
+        assertParallelDecrypt(new S100Crypt.EmptyIVNoPadding(KEY), new int[] { 0, 16, 4096, 4112, 100000 });
+    }
+
+    public void testBoundedInFlight() throws Exception {
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        List<Future<?>> submitted = new ArrayList<>();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ExecutorService executor = new ThreadPoolExecutor(8, 8, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>()) {
+            @Override
+            public void execute(Runnable command) {
+                synchronized (submitted) {
+                    submitted.add((Future<?>) command);
+                    maxInFlight.accumulateAndGet((int) submitted.stream().filter(f -> !f.isDone()).count(),
+                            Math::max);
+                }
+                super.execute(command);
+            }
+        };
+        Path encrypted = Files.createTempFile("s100parallel", ".encrypted");
+        Path decrypted = Files.createTempFile("s100parallel", ".decrypted");
+        try {
+            byte[] data = new byte[100000];
+            ThreadLocalRandom.current().nextBytes(data);
+            Files.write(encrypted, crypt.encrypt(data));
+            assertEquals(data.length, new S100ParallelDecryptor(executor, 2, 4096, 0).decrypt(crypt, encrypted,
+                    decrypted));
+            assertTrue(Arrays.equals(data, Files.readAllBytes(decrypted)));
+            assertTrue(submitted.size() > 20);
+            assertTrue(maxInFlight.get() <= 2);
+        } finally {
+            executor.shutdown();
+            Files.delete(encrypted);
+            Files.delete(decrypted);
+        }
+    }
+
+    public void testDefaultExecutor() throws Exception {
+        S100Crypt crypt = new S100Crypt.EmptyIVNoPadding(KEY);
+        Path encrypted = Files.createTempFile("s100parallel", ".encrypted");
+        Path decrypted = Files.createTempFile("s100parallel", ".decrypted");
+        try {
+            byte[] data = new byte[32 * 1024 * 1024];
+            Files.write(encrypted, crypt.encrypt(data));
+            assertEquals(data.length, new S100ParallelDecryptor().decrypt(crypt, encrypted, decrypted));
+            assertTrue(Arrays.equals(data, Files.readAllBytes(decrypted)));
+        } finally {
+            Files.delete(encrypted);
+            Files.delete(decrypted);
+        }
+    }
+
+    private static void assertParallelDecrypt(S100Crypt crypt, int[] lengths) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Path dir = Files.createTempDirectory("s100parallel");
+        Path encrypted = dir.resolve("encrypted");
+        Path decrypted = dir.resolve("decrypted");
+        try {
+            S100ParallelDecryptor parallel = new S100ParallelDecryptor(executor, 4096, 0);
+            S100ParallelDecryptor sequential = new S100ParallelDecryptor(executor, 4096, Long.MAX_VALUE);
+            for (int len : lengths) {
+                byte[] data = new byte[len];
+                ThreadLocalRandom.current().nextBytes(data);
+                Files.write(encrypted, crypt.encrypt(data));
+
+                assertEquals(len, parallel.decrypt(crypt, encrypted, decrypted));
+                assertTrue(Arrays.equals(data, Files.readAllBytes(decrypted)));
+
+                assertEquals(len, sequential.decrypt(crypt, encrypted, decrypted));
+                assertTrue(Arrays.equals(data, Files.readAllBytes(decrypted)));
+            }
+        } finally {
+            executor.shutdown();
+            Files.deleteIfExists(encrypted);
+            Files.deleteIfExists(decrypted);
+            Files.delete(dir);
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package no.ecc.s100.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import no.ecc.s100.S100ProductSpecification;
+
+public class S100PermitDatabaseTest extends TestCase {
+
+    public void testWriteAndOpen() throws Exception {
+        List<S100DataPermit> permits = new ArrayList<>();
+        permits.add(S100PermitIndexTest.permit("102NO00DDDDDD.h5", 1, "2027-01-01"));
+        permits.add(S100PermitIndexTest.permit("101NO00BBBBBB.000", 1, "2027-01-01"));
+        permits.add(S100PermitIndexTest.permit("101NO00AAAAAA.000", 2, "2028-02-29"));
+        permits.add(S100PermitIndexTest.permit("101NO00AAAAAA.000", 1, "2029-01-01"));
+
+        Path file = Files.createTempFile("permits", ".db");
+        try {
+            S100PermitDatabase.write(permits, file);
+            // each file name is written once
+            assertEquals(S100PermitDatabase.HEADER_SIZE + 3 * S100PermitDatabase.RECORD_SIZE + 17 + 17 + 16,
+                    Files.size(file));
+            try (S100PermitDatabase db = S100PermitDatabase.open(file)) {
+                assertEquals(3, db.size());
+                assertEquals(Arrays.asList("101NO00AAAAAA.000", "101NO00BBBBBB.000", "102NO00DDDDDD.h5"),
+                        S100PermitIndexTest.fileNames(db.getDataPermits()));
+
+                S100DataPermit a = db.get("101NO00AAAAAA.000");
+                assertEquals(2, a.getEdtn());
+                assertEquals(permits.get(2).getPermitEndDate(), a.getPermitEndDate());
+                assertEquals(permits.get(2).getEncryptedDataKey(), a.getEncryptedDataKey());
+                assertEquals(S100ProductSpecification.valueOf(101), a.getProductSpecification());
+                assertEquals(permits.get(2).decryptDataKey(S100PermitFileTest.HW_ID),
+                        a.decryptDataKey(S100PermitFileTest.HW_ID));
+
+                assertEquals(S100ProductSpecification.valueOf(102),
+                        db.get("102NO00DDDDDD.h5").getProductSpecification());
+                assertNull(db.get("101NO00AAAAAA.001"));
+                assertNull(db.get(""));
+                assertNull(db.get("999"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testPermitFile() throws Exception {
+        S100PermitFile permitFile = S100PermitFileTest.createPermitFile(200);
+        Path file = Files.createTempFile("permits", ".db");
+        try {
+            S100PermitDatabase.write(permitFile, file);
+            try (S100PermitDatabase db = S100PermitDatabase.open(file)) {
+                assertEquals(permitFile.getDataPermits().size(), db.size());
+                for (S100DataPermit permit : permitFile.getDataPermits()) {
+                    S100DataPermit found = db.get(permit.getFileName());
+                    assertEquals(permit.getEdtn(), found.getEdtn());
+                    assertEquals(permit.getEncryptedDataKey(), found.getEncryptedDataKey());
+                    assertEquals(permit.getPermitEndLocalDate(), found.getPermitEndLocalDate());
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testNotADatabase() throws Exception {
+        Path file = Files.createTempFile("permits", ".db");
+        try {
+            Files.write(file, new byte[100]);
+            S100PermitDatabase.open(file);
+            fail();
+        } catch (IOException e) {
+            // expected
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
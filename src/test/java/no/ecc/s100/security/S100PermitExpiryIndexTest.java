@@ -0,0 +1,96 @@
+package no.ecc.s100.security;
+
+import static no.ecc.s100.security.S100PermitIndexTest.fileNames;
+import static no.ecc.s100.security.S100PermitIndexTest.permit;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class S100PermitExpiryIndexTest extends TestCase {
+
+    public void testExpiry() throws Exception {
+        S100PermitExpiryIndex index = new S100PermitExpiryIndex();
+        index.add(permit("101NO00AAAAAA.000", 1, "2026-01-01"));
+        index.add(permit("101NO00BBBBBB.000", 1, "2026-01-10"));
+        index.add(permit("101NO00CCCCCC.000", 1, "2026-01-10"));
+        index.add(permit("101NO00DDDDDD.000", 1, "2026-02-01"));
+        assertEquals(4, index.size());
+        assertEquals(LocalDate.of(2026, 1, 1), index.getFirstExpiry());
+
+        assertEquals(Collections.emptyList(), index.expiredAsOf(LocalDate.of(2026, 1, 1)));
+        assertEquals(Arrays.asList("101NO00AAAAAA.000"), fileNames(index.expiredAsOf(LocalDate.of(2026, 1, 2))));
+        assertEquals(Arrays.asList("101NO00AAAAAA.000", "101NO00BBBBBB.000", "101NO00CCCCCC.000"),
+                fileNames(index.expiredAsOf(LocalDate.of(2026, 1, 11))));
+
+        assertEquals(Arrays.asList("101NO00BBBBBB.000", "101NO00CCCCCC.000"),
+                fileNames(index.expiringWithin(LocalDate.of(2026, 1, 2), 10)));
+        assertEquals(Arrays.asList("101NO00BBBBBB.000", "101NO00CCCCCC.000"),
+                fileNames(index.expiringWithin(LocalDate.of(2026, 1, 10), 0)));
+
+        // replacing a permit move it to the new expiry
+        index.add(permit("101NO00BBBBBB.000", 2, "2027-01-01"));
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("101NO00CCCCCC.000"),
+                fileNames(index.expiringWithin(LocalDate.of(2026, 1, 2), 10)));
+    }
+
+    public void testNewestWins() throws Exception {
+        S100PermitExpiryIndex index = new S100PermitExpiryIndex();
+        assertTrue(index.add(permit("101NO00AAAAAA.000", 2, "2026-01-01")));
+        assertFalse(index.add(permit("101NO00AAAAAA.000", 1, "2027-01-01")));
+        assertEquals(Arrays.asList("101NO00AAAAAA.000"), fileNames(index.expiredAsOf(LocalDate.of(2026, 1, 2))));
+
+        // a newer permit without expiry replace the indexed permit
+        assertTrue(index.add(permit("101NO00AAAAAA.000", 3, null)));
+        assertEquals(0, index.size());
+        assertFalse(index.add(permit("101NO00AAAAAA.000", 2, "2027-01-01")));
+        assertNotNull(index.remove("101NO00AAAAAA.000"));
+        assertNull(index.remove("101NO00AAAAAA.000"));
+    }
+
+    public void testRemoveChangedDate() throws Exception {
+        S100PermitExpiryIndex index = new S100PermitExpiryIndex();
+        S100DataPermit dataPermit = permit("101NO00AAAAAA.000", 1, "2026-01-01");
+        index.add(dataPermit);
+        dataPermit.getPermitEndDate().setTime(0);
+        assertSame(dataPermit, index.remove("101NO00AAAAAA.000"));
+        assertEquals(0, index.size());
+        assertNull(index.getFirstExpiry());
+    }
+
+    public void testAdvanceTo() throws Exception {
+        S100PermitExpiryIndex index = new S100PermitExpiryIndex(Arrays.asList(
+                permit("101NO00AAAAAA.000", 1, "2026-01-01"), permit("101NO00BBBBBB.000", 1, "2026-01-10"),
+                permit("101NO00CCCCCC.000", 1, "2026-02-01")));
+        List<String> notified = new ArrayList<>();
+        index.addListener((dataPermit, asOf) -> notified.add(dataPermit.getFileName() + " " + asOf));
+
+        assertEquals(Arrays.asList("101NO00AAAAAA.000", "101NO00BBBBBB.000"),
+                fileNames(index.advanceTo(LocalDate.of(2026, 1, 15))));
+        assertEquals(Arrays.asList("101NO00AAAAAA.000 2026-01-15", "101NO00BBBBBB.000 2026-01-15"), notified);
+        assertEquals(1, index.size());
+
+        notified.clear();
+        assertEquals(Collections.emptyList(), index.advanceTo(LocalDate.of(2026, 1, 20)));
+        assertEquals(Collections.emptyList(), notified);
+        assertNotNull(index.remove("101NO00CCCCCC.000"));
+        assertEquals(0, index.size());
+        assertNull(index.getFirstExpiry());
+    }
+
+    public void testApplyMerge() throws Exception {
+        S100PermitIndex permits = new S100PermitIndex(Arrays.asList(permit("101NO00AAAAAA.000", 1, "2026-01-01")));
+        S100PermitExpiryIndex index = new S100PermitExpiryIndex(permits.getDataPermits());
+        index.apply(permits.merge(Arrays.asList(permit("101NO00AAAAAA.000", 2, "2026-06-01"),
+                permit("101NO00BBBBBB.000", 1, "2026-03-01"))));
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList("101NO00BBBBBB.000", "101NO00AAAAAA.000"),
+                fileNames(index.expiredAsOf(LocalDate.of(2027, 1, 1))));
+    }
+
+}
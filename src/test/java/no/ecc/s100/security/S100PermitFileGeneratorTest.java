@@ -0,0 +1,64 @@
+package no.ecc.s100.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import no.ecc.s100.S100ProductSpecification;
+
+public class S100PermitFileGeneratorTest extends TestCase {
+
+    public void testGenerate() throws Exception {
+        Date expiry = new Date();
+        List<S100PermitFileGenerator.Vessel> vessels = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            vessels.add(new S100PermitFileGenerator.Vessel(S100UserPermit.createRandomHwId(), "userpermit" + i));
+        }
+        List<S100PermitFileGenerator.DataSet> dataSets = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            dataSets.add(new S100PermitFileGenerator.DataSet("101NO" + (10000000 + i) + ".000", 1, expiry,
+                    S100UserPermit.createRandomHwId(), new S100ProductSpecification(101)));
+        }
+
+        List<S100PermitFile> permitFiles = new S100PermitFileGenerator("ECC", 2).generate(vessels, dataSets);
+        assertEquals(vessels.size(), permitFiles.size());
+
+        for (int i = 0; i < vessels.size(); i++) {
+            S100PermitFile permitFile = permitFiles.get(i);
+            assertEquals("userpermit" + i, permitFile.getUserPermitString());
+            assertEquals(dataSets.size(), permitFile.getDataPermits().size());
+
+            Iterator<S100DataPermit> it = permitFile.getDataPermits().iterator();
+            for (S100PermitFileGenerator.DataSet dataSet : dataSets) {
+                S100DataPermit expected = S100DataPermit.create(dataSet.getFileName(), dataSet.getEdtn(),
+                        dataSet.getPermitEndDate(), dataSet.getDataKey(), vessels.get(i).getHwId(),
+                        dataSet.getProductSpecification());
+                S100DataPermit permit = it.next();
+                assertEquals(expected.getFileName(), permit.getFileName());
+                assertEquals(expected.getEncryptedDataKey(), permit.getEncryptedDataKey());
+            }
+        }
+    }
+
+    public void testIllegalHwId() throws Exception {
+        List<S100PermitFileGenerator.Vessel> vessels = Arrays
+                .asList(new S100PermitFileGenerator.Vessel("1234", "userpermit"));
+        List<S100PermitFileGenerator.DataSet> dataSets = Arrays.asList(new S100PermitFileGenerator.DataSet(
+                "101NO10000000.000", 1, new Date(), S100UserPermit.createRandomHwId(),
+                new S100ProductSpecification(101)));
+        try {
+            new S100PermitFileGenerator("ECC", 2).generate(vessels, dataSets);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected, like when generated on the calling thread
+        }
+    }
+
+    public void testNoVessels() throws Exception {
+        assertTrue(new S100PermitFileGenerator("ECC").generate(new ArrayList<>(), Arrays.asList()).isEmpty());
+    }
+
+}
@@ -0,0 +1,97 @@
+package no.ecc.s100.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+import no.ecc.s100.S100ProductSpecification;
+
+public class S100PermitFileTest extends TestCase {
+
+    static final String M_ID = "859868";
+    static final String M_KEY = "AD1DAD797C966EC9F6A55B66ED982815";
+    static final String HW_ID = "3B2B8520ACFC3E96FB4F4537C0C0E426";
+    static final String USER_PERMIT = "AD1DAD797C966EC9F6A55B66ED98281599B3C7B1859868";
+
+    static final S100ManufacturerLookup MANUFACTURER_LOOKUP = mId -> M_ID.equals(mId)
+            ? new S100Manufacturer(M_ID, M_KEY)
+            : null;
+
+    public void testWriteAndRead() throws Exception {
+        S100PermitFile permitFile = createPermitFile(10);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        permitFile.write(out);
+
+        S100PermitFile read = new S100PermitFile(MANUFACTURER_LOOKUP, new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(USER_PERMIT, read.getUserPermitString());
+        assertEquals("ECC", read.getDataserver());
+        assertEquals(permitFile.getDataPermits().size(), read.getDataPermits().size());
+        assertEquals(10, read.get(new S100ProductSpecification(101)).size());
+        assertEquals(10, read.get(new S100ProductSpecification(102)).size());
+
+        List<S100DataPermit> expected = new ArrayList<>(permitFile.getDataPermits());
+        List<S100DataPermit> actual = new ArrayList<>(read.getDataPermits());
+        SimpleDateFormat expiryFormat = new SimpleDateFormat(S100DataPermit.EXPIRY_DATE_FORMAT);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getFileName(), actual.get(i).getFileName());
+            assertEquals(expected.get(i).getEdtn(), actual.get(i).getEdtn());
+            assertEquals(expected.get(i).getEncryptedDataKey(), actual.get(i).getEncryptedDataKey());
+            assertEquals(expected.get(i).getProductSpecification(), actual.get(i).getProductSpecification());
+            assertEquals(expiryFormat.format(expected.get(i).getPermitEndDate()),
+                    expiryFormat.format(actual.get(i).getPermitEndDate()));
+        }
+    }
+
+    public void testHeaderDate() throws Exception {
+        Date date = new SimpleDateFormat("yyyyMMdd HH:mm:ss").parse("20260301 15:30:45");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        S100PermitFileWriter writer = new S100PermitFileWriter(out);
+        writer.writeHeader(date, "ECC", USER_PERMIT);
+        writer.finish();
+        assertTrue(out.toString("UTF-8").contains("20260301 15:30:45"));
+
+        try (S100PermitFileReader reader = new S100PermitFileReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(date, reader.getDate());
+        }
+    }
+
+    public void testReader() throws Exception {
+        S100PermitFile permitFile = createPermitFile(25);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        permitFile.write(out);
+
+        try (S100PermitFileReader reader = new S100PermitFileReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("ECC", reader.getDataserver());
+            assertEquals(USER_PERMIT, reader.getUserPermit().getUserPermitString());
+            assertNotNull(reader.getDate());
+
+            List<S100DataPermit> permits = new ArrayList<>();
+            reader.forEachRemaining(permits::add);
+            assertEquals(new ArrayList<>(permitFile.getDataPermits()), permits);
+            assertFalse(reader.hasNext());
+            assertNull(reader.read());
+        }
+
+        try (S100PermitFileReader reader = new S100PermitFileReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(25, reader.stream().filter(p -> p.getProductSpecification().getNumber() == 102).count());
+        }
+    }
+
+    static S100PermitFile createPermitFile(int permitsPerProduct) throws Exception {
+        S100PermitFile permitFile = new S100PermitFile("ECC", HW_ID, USER_PERMIT);
+        Date expiry = new SimpleDateFormat(S100DataPermit.EXPIRY_DATE_FORMAT).parse("2027-01-31");
+        for (int i = 0; i < permitsPerProduct; i++) {
+            permitFile.add("101NO" + (10000000 + i) + ".000", 1 + i % 3, expiry, S100UserPermit.createRandomHwId(),
+                    new S100ProductSpecification(101));
+            permitFile.add("102NO" + (10000000 + i) + ".h5", 2, expiry, S100UserPermit.createRandomHwId(),
+                    new S100ProductSpecification(102));
+        }
+        return permitFile;
+    }
+
+}
@@ -0,0 +1,122 @@
+package no.ecc.s100.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+import no.ecc.s100.S100ProductSpecification;
+
+public class S100PermitIndexTest extends TestCase {
+
+    public void testLookup() throws Exception {
+        S100PermitIndex index = new S100PermitIndex();
+        index.add(permit("101NO00AAAAAA.000", 1, "2027-01-01"));
+        index.add(permit("101NO00BBBBBB.000", 1, "2027-01-01"));
+        index.add(permit("101GB00CCCCCC.000", 1, "2027-01-01"));
+        index.add(permit("102NO00DDDDDD.h5", 1, "2027-01-01"));
+        index.add(permit("104NO00EEEEEE.h5", 1, "2027-01-01"));
+        assertEquals(5, index.size());
+
+        assertEquals("101NO00BBBBBB.000", index.get("101NO00BBBBBB.000").getFileName());
+        assertNull(index.get("101NO00BBBBBB.001"));
+        assertEquals("101NO00BBBBBB.000", index.getByDataSetId("101NO00BBBBBB").getFileName());
+        assertNotNull(index.get("101NO00BBBBBB.000", 1));
+        assertNull(index.get("101NO00BBBBBB.000", 2));
+
+        assertEquals(Arrays.asList("101GB00CCCCCC.000", "101NO00AAAAAA.000", "101NO00BBBBBB.000"),
+                fileNames(index.get(S100ProductSpecification.valueOf(101))));
+        assertEquals(Arrays.asList("101NO00AAAAAA.000", "101NO00BBBBBB.000"),
+                fileNames(index.get(S100ProductSpecification.valueOf(101), "NO")));
+        assertEquals(Arrays.asList("102NO00DDDDDD.h5", "104NO00EEEEEE.h5"), fileNames(
+                index.get(S100ProductSpecification.valueOf(102), S100ProductSpecification.valueOf(104))));
+
+        assertNotNull(index.remove("101NO00AAAAAA.000"));
+        assertNull(index.get("101NO00AAAAAA.000"));
+        assertNull(index.getByDataSetId("101NO00AAAAAA"));
+        assertEquals(4, index.size());
+    }
+
+    public void testNewestEditionWins() throws Exception {
+        S100PermitIndex index = new S100PermitIndex();
+        assertTrue(index.add(permit("101NO00AAAAAA.000", 2, "2027-01-01")));
+        assertFalse(index.add(permit("101NO00AAAAAA.000", 1, "2028-01-01")));
+        assertFalse(index.add(permit("101NO00AAAAAA.000", 2, "2026-01-01")));
+        assertTrue(index.add(permit("101NO00AAAAAA.000", 2, "2027-06-01")));
+        assertTrue(index.add(permit("101NO00AAAAAA.000", 3, "2026-01-01")));
+        assertEquals(1, index.size());
+        assertEquals(3, index.get("101NO00AAAAAA.000").getEdtn());
+        assertEquals(1, index.get(S100ProductSpecification.valueOf(101)).size());
+    }
+
+    public void testMerge() throws Exception {
+        S100PermitIndex index = new S100PermitIndex();
+        index.add(permit("101NO00AAAAAA.000", 1, "2027-01-01"));
+        index.add(permit("101NO00BBBBBB.000", 2, "2027-01-01"));
+        index.add(permit("101NO00CCCCCC.000", 1, "2027-01-01"));
+
+        S100PermitIndex.MergeResult result = index.merge(Arrays.asList(
+                permit("101NO00AAAAAA.000", 2, "2027-01-01"),
+                permit("101NO00AAAAAA.000", 3, "2027-01-01"),
+                permit("101NO00BBBBBB.000", 1, "2028-01-01"),
+                permit("101NO00CCCCCC.000", 1, "2027-06-01"),
+                permit("101NO00DDDDDD.000", 1, "2027-01-01"),
+                permit("101NO00DDDDDD.000", 2, "2027-01-01")));
+
+        assertTrue(result.isChanged());
+        assertEquals(Arrays.asList("101NO00DDDDDD.000"), fileNames(result.getAdded()));
+        assertEquals(2, result.getAdded().iterator().next().getEdtn());
+        assertEquals(Arrays.asList("101NO00AAAAAA.000", "101NO00CCCCCC.000"), fileNames(result.getUpdated()));
+        assertEquals(3, result.getUpdated().iterator().next().getEdtn());
+        assertEquals(Arrays.asList("101NO00AAAAAA.000", "101NO00CCCCCC.000"), fileNames(result.getSuperseded()));
+        assertEquals(1, result.getSuperseded().iterator().next().getEdtn());
+        assertEquals(Arrays.asList("101NO00BBBBBB.000"), fileNames(result.getIgnored()));
+
+        assertEquals(4, index.size());
+        assertEquals(3, index.get("101NO00AAAAAA.000").getEdtn());
+        assertEquals(2, index.get("101NO00BBBBBB.000").getEdtn());
+
+        assertFalse(index.merge(Arrays.asList(permit("101NO00BBBBBB.000", 2, "2027-01-01"))).isChanged());
+    }
+
+    public void testMergeReader() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        S100PermitFileWriter writer = new S100PermitFileWriter(out);
+        writer.writeHeader(new Date(), "dataserver", S100PermitFileTest.USER_PERMIT);
+        writer.write(permit("101NO00AAAAAA.000", 1, "2027-01-01"));
+        writer.write(permit("101NO00AAAAAA.000", 2, "2027-01-01"));
+        writer.write(permit("101NO00BBBBBB.000", 1, "2027-01-01"));
+        writer.finish();
+
+        S100PermitIndex index = new S100PermitIndex();
+        index.add(permit("101NO00BBBBBB.000", 1, "2026-01-01"));
+        S100PermitIndex.MergeResult result;
+        try (S100PermitFileReader reader = new S100PermitFileReader(new ByteArrayInputStream(out.toByteArray()))) {
+            result = index.merge(reader);
+        }
+        assertEquals(Arrays.asList("101NO00AAAAAA.000"), fileNames(result.getAdded()));
+        assertEquals(2, index.get("101NO00AAAAAA.000").getEdtn());
+        assertEquals(Arrays.asList("101NO00BBBBBB.000"), fileNames(result.getUpdated()));
+        assertTrue(result.getIgnored().isEmpty());
+    }
+
+    static S100DataPermit permit(String fileName, int edtn, String expiry) throws Exception {
+        Date permitEndDate = expiry == null ? null
+                : new SimpleDateFormat(S100DataPermit.EXPIRY_DATE_FORMAT).parse(expiry);
+        return S100DataPermit.create(fileName, edtn, permitEndDate, S100UserPermit.createRandomHwId(),
+                S100PermitFileTest.HW_ID, S100ProductSpecification.valueOf(fileName));
+    }
+
+    static List<String> fileNames(Iterable<S100DataPermit> dataPermits) {
+        List<String> r = new ArrayList<>();
+        for (S100DataPermit dataPermit : dataPermits) {
+            r.add(dataPermit.getFileName());
+        }
+        return r;
+    }
+
+}
@@ -1,9 +1,21 @@
 package no.ecc.s100.security;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.google.common.io.ByteStreams;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
 
 import junit.framework.TestCase;
 
@@ -35,8 +47,144 @@ public class S100SignatureTest extends TestCase {
         assertFalse(signature.verify());
     }
 
+    public void testCertificateStore() throws GeneralSecurityException, IOException {
+        S100CertificateStore store = new S100CertificateStore();
+        S100Certificate schemaCertificate = store.get(loadBytes("IHO-S100-root.CRT"));
+        S100Certificate dataServerCertificate = store.get(loadBytes("PRIMAR.crt"));
+        assertSame(dataServerCertificate, store.get(loadBytes("PRIMAR.crt")));
+        assertSame(dataServerCertificate, store.getByFingerprint(dataServerCertificate.getFingerprint()));
+        assertEquals(2, store.size());
+
+        // a fixed time when both certificates are valid, as they expire
+        long now = Instant.parse("2024-06-01T00:00:00Z").toEpochMilli();
+
+        // nothing is trusted yet
+        try {
+            store.verify(dataServerCertificate, schemaCertificate, now);
+            fail();
+        } catch (GeneralSecurityException e) {
+        }
+        try {
+            store.verify(dataServerCertificate, now);
+            fail();
+        } catch (GeneralSecurityException e) {
+        }
+        // a leaf certificate can not be a trust anchor
+        try {
+            store.addTrustAnchor(dataServerCertificate);
+            fail();
+        } catch (GeneralSecurityException e) {
+        }
+
+        store.addTrustAnchor(schemaCertificate);
+        store.verify(dataServerCertificate, schemaCertificate, now);
+        store.verify(dataServerCertificate, now);
+        try {
+            store.verify(schemaCertificate, dataServerCertificate, now);
+            fail();
+        } catch (GeneralSecurityException e) {
+        }
+
+        // a remembered verification is not used outside the validity period
+        long afterExpiry = dataServerCertificate.getCertificate().getNotAfter().getTime() + 1;
+        try {
+            store.verify(dataServerCertificate, afterExpiry);
+            fail();
+        } catch (GeneralSecurityException e) {
+        }
+        long beforeValid = dataServerCertificate.getCertificate().getNotBefore().getTime() - 1;
+        try {
+            store.verify(dataServerCertificate, schemaCertificate, beforeValid);
+            fail();
+        } catch (GeneralSecurityException e) {
+        }
+        store.verify(dataServerCertificate, now);
+
+        store.removeTrustAnchor(schemaCertificate);
+        try {
+            store.verify(dataServerCertificate, now);
+            fail();
+        } catch (GeneralSecurityException e) {
+        }
+        store.addTrustAnchor(schemaCertificate);
+
+        String signatureValue = "MCwCFAamPwY65gQJaKF+eDImoHYzzyjzAhRg1Kt+bfbs6lVByoB+dBPFV4+DkQ==";
+        for (int i = 0; i < 2; i++) {
+            S100Signature signature = store.verifier(dataServerCertificate.getPublicKey(), signatureValue);
+            signature.update("Some data to sign".getBytes("UTF-8"));
+            assertTrue(signature.verify());
+            signature = store.verifier(dataServerCertificate.getPublicKey(), signatureValue);
+            signature.update("Some other data".getBytes("UTF-8"));
+            assertFalse(signature.verify());
+        }
+    }
+
+    public void testVerifyFiles() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+        Path dir = Files.createTempDirectory("s100signature");
+        try {
+            Map<Path, String> signatureByFile = new LinkedHashMap<>();
+            for (int i = 0; i < 4; i++) {
+                byte[] data = new byte[100000 * i];
+                ThreadLocalRandom.current().nextBytes(data);
+                Path file = dir.resolve("file" + i);
+                Files.write(file, data);
+
+                S100Signature signature = new S100Signature();
+                signature.initSign(keyPair.getPrivate());
+                signature.update(new ByteArrayInputStream(data));
+                signature.sign();
+                signatureByFile.put(file, signature.toString());
+            }
+            signatureByFile.put(dir.resolve("file0"), signatureByFile.get(dir.resolve("file1")));
+            signatureByFile.put(dir.resolve("missing"), signatureByFile.get(dir.resolve("file1")));
+
+            List<S100SignatureVerifier.Result> results = new S100SignatureVerifier(keyPair.getPublic(), 2)
+                    .verify(signatureByFile);
+            assertEquals(5, results.size());
+            assertFalse(results.get(0).isValid());
+            assertNull(results.get(0).getFailure());
+            assertTrue(results.get(1).isValid());
+            assertTrue(results.get(2).isValid());
+            assertTrue(results.get(3).isValid());
+            assertFalse(results.get(4).isValid());
+            assertNotNull(results.get(4).getFailure());
+        } finally {
+            MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    public void testWorkerFailureKeepResults() throws Exception {
+        Path dir = Files.createTempDirectory("s100signature");
+        try {
+            Map<Path, String> signatureByFile = new LinkedHashMap<>();
+            signatureByFile.put(dir.resolve("file0"), "AAAA");
+            signatureByFile.put(dir.resolve("file1"), "AAAA");
+
+            S100CryptoProviders.setSignatureProvider(S100CryptoProviders.provider("NoSuchProvider"));
+            List<S100SignatureVerifier.Result> results = new S100SignatureVerifier(
+                    KeyPairGenerator.getInstance("DSA").generateKeyPair().getPublic(), 2).verify(signatureByFile);
+            assertEquals(2, results.size());
+            for (S100SignatureVerifier.Result result : results) {
+                assertFalse(result.isValid());
+                assertNotNull(result.getFailure());
+            }
+            assertEquals(dir.resolve("file1"), results.get(1).getFile());
+        } finally {
+            S100CryptoProviders.setSignatureProvider(null);
+            Files.delete(dir);
+        }
+    }
+
     private S100Certificate loadCertificate(String name) throws GeneralSecurityException, IOException {
-        return new S100Certificate(ByteStreams.toByteArray(getClass().getResourceAsStream(name)));
+        return new S100Certificate(loadBytes(name));
+    }
+
+    private byte[] loadBytes(String name) throws IOException {
+        return ByteStreams.toByteArray(getClass().getResourceAsStream(name));
     }
 
 }
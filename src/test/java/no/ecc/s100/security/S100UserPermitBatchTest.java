@@ -0,0 +1,54 @@
+package no.ecc.s100.security;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class S100UserPermitBatchTest extends TestCase {
+
+    public void testIsValid() {
+        assertTrue(S100UserPermit.isValid(S100PermitFileTest.USER_PERMIT));
+        assertFalse(S100UserPermit.isValid(S100PermitFileTest.USER_PERMIT.replace("99B3C7B1", "99B3C7B2")));
+        assertFalse(S100UserPermit.isValid(S100PermitFileTest.USER_PERMIT.substring(1)));
+        assertFalse(S100UserPermit.isValid(null));
+        assertEquals("99B3C7B1", new S100UserPermit(S100PermitFileTest.USER_PERMIT).getEncryptedHwIdCRC());
+    }
+
+    public void testCreateAndValidate() throws Exception {
+        S100Manufacturer manufacturer = new S100Manufacturer(S100PermitFileTest.M_ID, S100PermitFileTest.M_KEY);
+        List<String> hwIds = new ArrayList<>();
+        hwIds.add(S100PermitFileTest.HW_ID);
+        for (int i = 0; i < 1000; i++) {
+            hwIds.add(S100UserPermit.createRandomHwId());
+        }
+
+        S100UserPermitBatch batch = new S100UserPermitBatch(S100PermitFileTest.MANUFACTURER_LOOKUP, 3);
+        List<S100UserPermit> userPermits = batch.create(manufacturer, hwIds);
+        assertEquals(hwIds.size(), userPermits.size());
+        assertEquals(S100PermitFileTest.USER_PERMIT, userPermits.get(0).getUserPermitString());
+
+        List<String> userPermitStrings = new ArrayList<>();
+        for (int i = 0; i < userPermits.size(); i++) {
+            S100UserPermit userPermit = userPermits.get(i);
+            assertEquals(manufacturer.encrypt(hwIds.get(i)), userPermit.getHwIdEncrypted());
+            userPermitStrings.add(userPermit.getUserPermitString());
+        }
+        userPermitStrings.add(S100PermitFileTest.USER_PERMIT.replace("99B3C7B1", "99B3C7B2"));
+        userPermitStrings.add(S100PermitFileTest.USER_PERMIT.replace("859868", "111111"));
+
+        List<S100UserPermitBatch.Validation> validations = batch.validate(userPermitStrings);
+        assertEquals(userPermitStrings.size(), validations.size());
+        for (int i = 0; i < hwIds.size(); i++) {
+            S100UserPermitBatch.Validation validation = validations.get(i);
+            assertEquals(46, userPermitStrings.get(i).length());
+            assertTrue(validation.toString(), validation.isValid());
+            assertEquals(hwIds.get(i), validation.getHwId());
+        }
+        assertFalse(validations.get(hwIds.size()).isValid());
+        assertNull(validations.get(hwIds.size()).getUserPermit());
+        assertFalse(validations.get(hwIds.size() + 1).isValid());
+        assertNotNull(validations.get(hwIds.size() + 1).getUserPermit());
+    }
+
+}
@@ -0,0 +1,90 @@
+package no.ecc.s100.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import junit.framework.TestCase;
+
+public class S100VerifyingDecryptorTest extends TestCase {
+
+    private static final String KEY = "1C81DFAB4053D04803FFDC87EF92FDD1";
+
+    public void testDecryptAndVerify() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("DSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+        S100Crypt crypt = new S100Crypt.RandomIV(KEY);
+        byte[] data = new byte[3 * 1024 * 1024 + 7];
+        ThreadLocalRandom.current().nextBytes(data);
+        byte[] encrypted = crypt.encrypt(data);
+
+        S100Signature signature = new S100Signature();
+        signature.initSign(keyPair.getPrivate());
+        signature.update(encrypted);
+        signature.sign();
+        String signatureBase64 = signature.toString();
+
+        // signature of the unencrypted data is not valid
+        signature.initSign(keyPair.getPrivate());
+        signature.update(data);
+        signature.sign();
+        String otherSignatureBase64 = signature.toString();
+
+        S100VerifyingDecryptor decryptor = new S100VerifyingDecryptor(crypt, keyPair.getPublic());
+
+        // stream
+        try (InputStream in = decryptor.decrypt(new ByteArrayInputStream(encrypted), signatureBase64)) {
+            assertTrue(Arrays.equals(data, ByteStreams.toByteArray(in)));
+        }
+        try (InputStream in = decryptor.decrypt(new ByteArrayInputStream(encrypted), otherSignatureBase64)) {
+            ByteStreams.toByteArray(in);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof SignatureException);
+        }
+
+        // file
+        Path dir = Files.createTempDirectory("s100verify");
+        try {
+            Path encryptedFile = dir.resolve("encrypted");
+            Path target = dir.resolve("decrypted");
+            Files.write(encryptedFile, encrypted);
+            try {
+                decryptor.decrypt(encryptedFile, otherSignatureBase64, target);
+                fail();
+            } catch (SignatureException e) {
+            }
+            assertFalse(Files.exists(target));
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(1, files.count());
+            }
+
+            assertEquals(data.length, decryptor.decrypt(encryptedFile, signatureBase64, target));
+            assertTrue(Arrays.equals(data, Files.readAllBytes(target)));
+
+            // the target get the same permissions as any new file
+            if (Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Path newFile = Files.createFile(dir.resolve("new"));
+                assertEquals(Files.getPosixFilePermissions(newFile), Files.getPosixFilePermissions(target));
+            }
+        } finally {
+            MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package no.ecc.s100.utility;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import junit.framework.TestCase;
+
+public class CRC32HelperTest extends TestCase {
+
+    public void testCrc32String() {
+        assertEquals("00000000", CRC32Helper.crc32String(new byte[0]));
+        assertEquals("CBF43926", CRC32Helper.crc32String("123456789".getBytes()));
+    }
+
+    public void testCrc32CharSequence() {
+        for (int i = 0; i < 1000; i++) {
+            String s = randomHex(32);
+            String expected = CRC32Helper.crc32String(s.getBytes());
+            assertEquals(8, expected.length());
+            int crc = CRC32Helper.crc32(s, 0, s.length());
+            assertEquals((int) CRC32Helper.crc32(s.getBytes()), crc);
+            assertTrue(CRC32Helper.isCrc32String(crc, expected, 0, expected.length()));
+            assertFalse(CRC32Helper.isCrc32String(crc, expected.toLowerCase() + "X", 0, expected.length() + 1));
+            assertFalse(CRC32Helper.isCrc32String(crc ^ 1, expected, 0, expected.length()));
+        }
+    }
+
+    public void testLeadingZeros() {
+        assertTrue(CRC32Helper.isCrc32String(0x0000ABCD, "0000ABCD", 0, 8));
+        assertTrue(CRC32Helper.isCrc32String(0, "x00000000x", 1, 9));
+        assertFalse(CRC32Helper.isCrc32String(0x0000ABCD, "ABCD", 0, 4));
+    }
+
+    private static String randomHex(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(Character.toUpperCase(Character.forDigit(ThreadLocalRandom.current().nextInt(16), 16)));
+        }
+        return sb.toString();
+    }
+
+}